@@ -11,4 +11,9 @@ public interface ClientConstants {
 	String TRUSTSTORE_LOCATION = "ssl.trust-store";
 	String TRUSTSTORE_PASSWORD = "ssl.trust-store-password";
 	String CONNECT_TIMEOUT = "connect-timeout";
+	String SSL_PROVIDER = "ssl.provider";
+	String SSL_PROTOCOLS = "ssl.protocols";
+	String SSL_CIPHER_SUITES = "ssl.cipher-suites";
+	String SSL_SESSION_CACHE_SIZE = "ssl.session-cache-size";
+	String SSL_SESSION_TIMEOUT = "ssl.session-timeout";
 }
@@ -2,11 +2,22 @@ package de.mklinger.jgroups.http.client;
 
 import static de.mklinger.jgroups.http.client.ClientConstants.*;
 
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.security.Provider;
+import java.security.Security;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
 import java.util.Properties;
 
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,11 +39,135 @@ public class DefaultClientFactory implements ClientFactory {
 	}
 
 	protected void configureClient(final Builder clientBuilder, final Properties clientProperties) {
-		applyKeyStore(clientBuilder, clientProperties);
-		applyTrustStore(clientBuilder, clientProperties);
+		if (isCustomSslContext(clientProperties)) {
+			applySslContext(clientBuilder, clientProperties);
+		} else {
+			applyKeyStore(clientBuilder, clientProperties);
+			applyTrustStore(clientBuilder, clientProperties);
+		}
 		applyConnectTimeout(clientBuilder, clientProperties);
 	}
 
+	protected boolean isCustomSslContext(final Properties clientProperties) {
+		return clientProperties.getProperty(SSL_PROVIDER) != null
+				|| clientProperties.getProperty(SSL_PROTOCOLS) != null
+				|| clientProperties.getProperty(SSL_CIPHER_SUITES) != null
+				|| clientProperties.getProperty(SSL_SESSION_CACHE_SIZE) != null
+				|| clientProperties.getProperty(SSL_SESSION_TIMEOUT) != null;
+	}
+
+	/**
+	 * Create the SSL context ourselves, to be able to choose the JCA provider
+	 * and to configure the TLS session cache, protocols and cipher suites.
+	 */
+	protected void applySslContext(final Builder clientBuilder, final Properties clientProperties) {
+		final SSLContext sslContext;
+		try {
+			sslContext = newSslContext(clientProperties);
+		} catch (final GeneralSecurityException e) {
+			throw new IllegalArgumentException("Error creating SSL context", e);
+		}
+		clientBuilder.sslContext(sslContext);
+
+		final SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
+		final String protocols = clientProperties.getProperty(SSL_PROTOCOLS);
+		if (protocols != null) {
+			LOG.info("Using HTTP client SSL protocols {}", protocols);
+			sslParameters.setProtocols(toList(protocols));
+		}
+		final String cipherSuites = clientProperties.getProperty(SSL_CIPHER_SUITES);
+		if (cipherSuites != null) {
+			LOG.info("Using HTTP client SSL cipher suites {}", cipherSuites);
+			sslParameters.setCipherSuites(toList(cipherSuites));
+		}
+		clientBuilder.sslParameters(sslParameters);
+	}
+
+	private SSLContext newSslContext(final Properties clientProperties) throws GeneralSecurityException {
+		final String providerName = clientProperties.getProperty(SSL_PROVIDER);
+		final SSLContext sslContext;
+		if (providerName != null) {
+			final Provider provider = getProvider(providerName);
+			LOG.info("Using HTTP client SSL provider {}", provider.getName());
+			sslContext = SSLContext.getInstance("TLS", provider);
+		} else {
+			sslContext = SSLContext.getInstance("TLS");
+		}
+		sslContext.init(getKeyManagers(clientProperties), getTrustManagers(clientProperties), null);
+
+		final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+		final String sessionCacheSize = clientProperties.getProperty(SSL_SESSION_CACHE_SIZE);
+		if (sessionCacheSize != null) {
+			LOG.info("Using HTTP client SSL session cache size {}", sessionCacheSize);
+			sessionContext.setSessionCacheSize(Integer.parseInt(sessionCacheSize));
+		}
+		final String sessionTimeout = clientProperties.getProperty(SSL_SESSION_TIMEOUT);
+		if (sessionTimeout != null) {
+			final Duration d = toDuration(sessionTimeout);
+			if (d.isZero() || d.isNegative()) {
+				// 0 would mean no timeout at all
+				throw new IllegalArgumentException("Invalid SSL session timeout: " + sessionTimeout);
+			}
+			// The session context uses whole seconds, round up so short timeouts are not lost
+			final long seconds = d.getSeconds() + (d.getNano() > 0 ? 1 : 0);
+			LOG.info("Using HTTP client SSL session timeout {} s", seconds);
+			sessionContext.setSessionTimeout((int) Math.min(Integer.MAX_VALUE, seconds));
+		}
+
+		return sslContext;
+	}
+
+	/**
+	 * Get a registered provider by name or create a new provider instance by
+	 * class name, e.g. <code>org.conscrypt.OpenSSLProvider</code>.
+	 */
+	private Provider getProvider(final String providerName) {
+		final Provider provider = Security.getProvider(providerName);
+		if (provider != null) {
+			return provider;
+		}
+		try {
+			return (Provider) Class.forName(providerName).newInstance();
+		} catch (InstantiationException | IllegalAccessException | ClassNotFoundException | ClassCastException e) {
+			throw new IllegalArgumentException("Error instantiating SSL provider " + providerName, e);
+		}
+	}
+
+	private KeyManager[] getKeyManagers(final Properties clientProperties) throws GeneralSecurityException {
+		final String keystoreLocation = clientProperties.getProperty(KEYSTORE_LOCATION);
+		if (keystoreLocation == null) {
+			return null;
+		}
+		LOG.info("Using HTTP client keystore from '{}'", keystoreLocation);
+		final String keystorePassword = clientProperties.getProperty(KEYSTORE_PASSWORD);
+		final KeyStore keyStore = KeyStores.load(keystoreLocation, keystorePassword);
+		final String keyPassword = clientProperties.getProperty(KEY_PASSWORD, keystorePassword);
+		final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, keyPassword == null ? null : keyPassword.toCharArray());
+		return keyManagerFactory.getKeyManagers();
+	}
+
+	private TrustManager[] getTrustManagers(final Properties clientProperties) throws GeneralSecurityException {
+		final String truststoreLocation = clientProperties.getProperty(TRUSTSTORE_LOCATION);
+		if (truststoreLocation == null) {
+			return null;
+		}
+		LOG.info("Using HTTP client truststore from '{}'", truststoreLocation);
+		final String truststorePassword = clientProperties.getProperty(TRUSTSTORE_PASSWORD);
+		final KeyStore trustStore = KeyStores.load(truststoreLocation, truststorePassword);
+		final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagerFactory.init(trustStore);
+		return trustManagerFactory.getTrustManagers();
+	}
+
+	/**
+	 * Lists are separated by whitespace or colons, as commas already separate
+	 * the client properties.
+	 */
+	private static String[] toList(final String value) {
+		return value.trim().split("[\\s:]+");
+	}
+
 	protected void applyKeyStore(final Builder clientBuilder, final Properties clientProperties) {
 		final String keystoreLocation = clientProperties.getProperty(KEYSTORE_LOCATION);
 		if (keystoreLocation != null) {
@@ -63,13 +198,13 @@ public class DefaultClientFactory implements ClientFactory {
 		}
 	}
 
-	private Duration toDuration(final String connectTimeout) {
+	private Duration toDuration(final String value) {
 		try {
-			return Duration.parse(connectTimeout);
+			return Duration.parse(value);
 		} catch (final DateTimeParseException e) {
 			// fall back to millis
 			try {
-				return Duration.ofMillis(Long.parseLong(connectTimeout));
+				return Duration.ofMillis(Long.parseLong(value));
 			} catch (final NumberFormatException e2) {
 				e.addSuppressed(e2);
 				throw e;
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.common;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple thread-safe count/min/max/average statistics for durations.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DurationStats {
+	private long count;
+	private long totalNanos;
+	private long minNanos = Long.MAX_VALUE;
+	private long maxNanos;
+
+	public synchronized void add(final long nanos) {
+		count++;
+		totalNanos += nanos;
+		minNanos = Math.min(minNanos, nanos);
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized double getAverageMillis() {
+		if (count == 0) {
+			return 0;
+		}
+		return toMillis(totalNanos / count);
+	}
+
+	public synchronized double getMinMillis() {
+		if (count == 0) {
+			return 0;
+		}
+		return toMillis(minNanos);
+	}
+
+	public synchronized double getMaxMillis() {
+		return toMillis(maxNanos);
+	}
+
+	public synchronized void clear() {
+		count = 0;
+		totalNanos = 0;
+		minNanos = Long.MAX_VALUE;
+		maxNanos = 0;
+	}
+
+	private static double toMillis(final long nanos) {
+		return ((double) nanos) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US, "count=%d, min=%.2f ms, avg=%.2f ms, max=%.2f ms",
+				count, getMinMillis(), getAverageMillis(), getMaxMillis());
+	}
+}
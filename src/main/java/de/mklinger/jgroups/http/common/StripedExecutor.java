@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.common;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks with the same key in submission order and tasks with
+ * different keys in parallel. Each key is mapped to one of a fixed number
+ * of stripes, each with its own thread and bounded queue. Submitting blocks
+ * while the queue of the stripe is full.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class StripedExecutor implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(StripedExecutor.class);
+
+	private static final Runnable STOP = () -> {};
+
+	private final Stripe[] stripes;
+	private volatile boolean closed;
+
+	/**
+	 * @param name The thread name prefix
+	 * @param stripeCount The number of stripes, i.e. the max parallelism
+	 * @param queueCapacity The max number of waiting tasks per stripe
+	 */
+	public StripedExecutor(final String name, final int stripeCount, final int queueCapacity) {
+		if (stripeCount <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("Stripe count and queue capacity must be > 0");
+		}
+		this.stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(name + "-" + (i + 1), queueCapacity);
+		}
+	}
+
+	/**
+	 * Execute a task after all tasks with the same key submitted before.
+	 * @throws RejectedExecutionException If closed or interrupted while
+	 *         waiting for space in the queue
+	 */
+	public void execute(final Object key, final Runnable task) {
+		if (closed) {
+			throw new RejectedExecutionException("Executor closed");
+		}
+		try {
+			stripes[indexFor(key)].queue.put(task);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted", e);
+		}
+	}
+
+	private int indexFor(final Object key) {
+		final int h = key.hashCode();
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % stripes.length;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * @return The number of tasks waiting in all stripes
+	 */
+	public int getQueueSize() {
+		int size = 0;
+		for (final Stripe stripe : stripes) {
+			size += stripe.queue.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return <code>true</code> if the queue of the stripe of the given key is
+	 *         full, so submitting a task with this key would block
+	 */
+	public boolean isSaturated(final Object key) {
+		return stripes[indexFor(key)].queue.remainingCapacity() == 0;
+	}
+
+	/**
+	 * Stop accepting tasks. Tasks already submitted are still executed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (final Stripe stripe : stripes) {
+			stripe.queue.offer(STOP);
+		}
+	}
+
+	private class Stripe implements Runnable {
+		private final BlockingQueue<Runnable> queue;
+
+		Stripe(final String threadName, final int queueCapacity) {
+			this.queue = new LinkedBlockingQueue<>(queueCapacity);
+			final Thread thread = new Thread(this, threadName);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				final Runnable task;
+				try {
+					task = queue.take();
+				} catch (final InterruptedException e) {
+					return;
+				}
+				if (task == STOP) {
+					return;
+				}
+				try {
+					task.run();
+				} catch (final Throwable e) {
+					LOG.error("Error executing task", e);
+				}
+				if (closed && queue.isEmpty()) {
+					// the stop task may not have fit into the queue
+					return;
+				}
+			}
+		}
+	}
+}
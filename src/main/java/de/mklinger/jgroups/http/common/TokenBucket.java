@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.common;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Simple thread-safe token bucket for rate limiting. The bucket holds at
+ * most one second worth of tokens. Tokens may be taken as long as the bucket
+ * is not empty, even if more tokens are taken than available. The bucket is
+ * then in debt until refilled, so requests larger than the rate still pass
+ * and the long term rate is kept.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class TokenBucket {
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final LongSupplier nanoClock;
+	private long ratePerSecond;
+	private double tokens;
+	private long lastRefillNanos;
+
+	/**
+	 * @param ratePerSecond Tokens added per second or 0 for no limit
+	 */
+	public TokenBucket(final long ratePerSecond) {
+		this(ratePerSecond, System::nanoTime);
+	}
+
+	public TokenBucket(final long ratePerSecond, final LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+		this.lastRefillNanos = nanoClock.getAsLong();
+		setRate(ratePerSecond);
+	}
+
+	/**
+	 * @param ratePerSecond Tokens added per second or 0 for no limit
+	 */
+	public synchronized void setRate(final long ratePerSecond) {
+		if (ratePerSecond < 0) {
+			throw new IllegalArgumentException("Rate must be >= 0. Given: " + ratePerSecond);
+		}
+		refill();
+		if (this.ratePerSecond == 0) {
+			// start full
+			tokens = ratePerSecond;
+		} else {
+			tokens = Math.min(tokens, ratePerSecond);
+		}
+		this.ratePerSecond = ratePerSecond;
+	}
+
+	public synchronized long getRate() {
+		return ratePerSecond;
+	}
+
+	public synchronized boolean isUnlimited() {
+		return ratePerSecond == 0;
+	}
+
+	/**
+	 * Take tokens, if the bucket is not empty.
+	 * @return <code>true</code> if taken, <code>false</code> if the bucket is empty
+	 */
+	public synchronized boolean tryTake(final long count) {
+		if (getWaitNanos() > 0) {
+			return false;
+		}
+		take(count);
+		return true;
+	}
+
+	/**
+	 * Take tokens, even if the bucket is empty.
+	 */
+	public synchronized void take(final long count) {
+		if (ratePerSecond == 0) {
+			return;
+		}
+		refill();
+		tokens -= count;
+	}
+
+	/**
+	 * @return The nanoseconds until the bucket is not empty anymore or 0 if
+	 *         tokens can be taken right away
+	 */
+	public synchronized long getWaitNanos() {
+		if (ratePerSecond == 0) {
+			return 0;
+		}
+		refill();
+		if (tokens > 0) {
+			return 0;
+		}
+		return (long) Math.ceil((-tokens + 1) * NANOS_PER_SECOND / ratePerSecond);
+	}
+
+	private void refill() {
+		final long now = nanoClock.getAsLong();
+		if (ratePerSecond > 0) {
+			tokens = Math.min(ratePerSecond, tokens + ((double) (now - lastRefillNanos)) * ratePerSecond / NANOS_PER_SECOND);
+		}
+		lastRefillNanos = now;
+	}
+
+	@Override
+	public synchronized String toString() {
+		if (ratePerSecond == 0) {
+			return "unlimited";
+		}
+		refill();
+		return String.format(Locale.US, "rate=%d/s, tokens=%.0f", ratePerSecond, tokens);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of messages received concurrently and the number of
+ * bytes buffered for them. Requests exceeding the limits should be answered
+ * with status 503, before reading their body, so an overloaded node does not
+ * take on even more work.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class AdmissionControl {
+	public static final String RETRY_AFTER_HEADER = "Retry-After";
+	/** Default seconds to send in the Retry-After header of rejected requests */
+	public static final String DEFAULT_RETRY_AFTER = "1";
+
+	private final int maxConcurrentRequests;
+	private final long maxBufferedBytes;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicLong bufferedBytes = new AtomicLong();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param maxConcurrentRequests Max number of messages received
+	 *        concurrently or 0 for no limit
+	 * @param maxBufferedBytes Max number of bytes buffered for messages
+	 *        received concurrently or 0 for no limit
+	 */
+	public AdmissionControl(final int maxConcurrentRequests, final long maxBufferedBytes) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	/**
+	 * Admit a request, if within the limits. Each successful call must be
+	 * followed by a call to {@link #release(long)} with the same size.
+	 * @param bytes The number of bytes to buffer for the request
+	 * @return <code>true</code> if admitted, <code>false</code> if the request
+	 *         should be rejected
+	 */
+	public boolean tryAcquire(final long bytes) {
+		final int newRequests = requests.incrementAndGet();
+		final long newBufferedBytes = bufferedBytes.addAndGet(bytes);
+		if ((maxConcurrentRequests > 0 && newRequests > maxConcurrentRequests)
+				|| (maxBufferedBytes > 0 && newBufferedBytes > maxBufferedBytes && newBufferedBytes != bytes)) {
+			// A single request is always admitted, so messages larger than the
+			// buffer limit can still be received
+			release(bytes);
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	public void release(final long bytes) {
+		requests.decrementAndGet();
+		bufferedBytes.addAndGet(-bytes);
+	}
+
+	/**
+	 * Count a request rejected for another reason, e.g. an overloaded receiver.
+	 */
+	public void rejected() {
+		rejected.increment();
+	}
+
+	public int getRequests() {
+		return requests.get();
+	}
+
+	public long getBufferedBytes() {
+		return bufferedBytes.get();
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "requests: " + getRequests() + "/" + maxConcurrentRequests
+				+ ", buffered bytes: " + getBufferedBytes() + "/" + maxBufferedBytes
+				+ ", rejected: " + getRejected();
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server;
+
+/**
+ * The header carrying the name of the cluster a message is sent to. Used to
+ * route messages to the right channel when several channels share one
+ * servlet.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class ClusterHeader {
+	public static final String NAME = "X-Cluster";
+
+	/** No instantiation */
+	private ClusterHeader() {}
+}
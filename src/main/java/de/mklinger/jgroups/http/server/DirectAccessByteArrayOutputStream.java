@@ -1,6 +1,8 @@
 package de.mklinger.jgroups.http.server;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class DirectAccessByteArrayOutputStream extends ByteArrayOutputStream {
 	public DirectAccessByteArrayOutputStream() {
@@ -13,4 +15,16 @@ public class DirectAccessByteArrayOutputStream extends ByteArrayOutputStream {
 	public byte[] getBuffer() {
 		return buf;
 	}
+
+	/**
+	 * Write the remaining bytes of the given buffer, without intermediate copy.
+	 */
+	public synchronized void write(final ByteBuffer buffer) {
+		final int len = buffer.remaining();
+		if (count + len > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+		}
+		buffer.get(buf, count, len);
+		count += len;
+	}
 }
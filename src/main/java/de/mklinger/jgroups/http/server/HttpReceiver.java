@@ -22,4 +22,24 @@ import org.jgroups.Address;
  */
 public interface HttpReceiver {
 	void receive(Address sender, byte[] data, int offset, int length);
+
+	/**
+	 * Receive a message with the transport sequence number assigned by the
+	 * sender. Default implementation ignores the sequence number.
+	 * @param sequence The sequence number or <code>null</code> if the sender
+	 *        did not send one
+	 */
+	default void receive(final Address sender, final SequenceHeader sequence, final byte[] data, final int offset, final int length) {
+		receive(sender, data, offset, length);
+	}
+
+	/**
+	 * Receivers that cannot keep up with incoming messages of the given sender
+	 * return <code>true</code> here, so new messages of this sender are
+	 * rejected with status 503 until they caught up. Default implementation
+	 * returns <code>false</code>.
+	 */
+	default boolean isOverloaded(final Address sender) {
+		return false;
+	}
 }
@@ -16,7 +16,6 @@
 package de.mklinger.jgroups.http.server;
 
 import java.io.IOException;
-import java.util.Objects;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
@@ -24,13 +23,10 @@ import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.jgroups.protocols.mklinger.HostAddress;
 import org.jgroups.stack.IpAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.mklinger.jgroups.http.common.SizeValue;
-
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
@@ -39,42 +35,21 @@ public class JGroupsReadListener implements ReadListener {
 
 	private final AsyncContext asyncContext;
 	private final IpAddress sender;
+	private final SequenceHeader sequence;
 	private final HttpReceiver receiver;
-	private final int maxContentLength;
-	private DirectAccessByteArrayOutputStream data;
-	private byte[] buf;
+	private ReceiveBuffer data;
 
-	public JGroupsReadListener(final AsyncContext asyncContext, final HttpReceiver receiver, final int maxContentLength) throws BadRequestException {
+	/**
+	 * @throws IllegalArgumentException If the announced content length exceeds
+	 *         the maximum
+	 */
+	public JGroupsReadListener(final AsyncContext asyncContext, final HttpReceiver receiver, final IpAddress sender, final int maxContentLength) throws BadRequestException {
 		this.asyncContext = asyncContext;
 		this.receiver = receiver;
-		this.maxContentLength = maxContentLength;
+		this.sender = sender;
 		final HttpServletRequest request = (HttpServletRequest) asyncContext.getRequest();
-		this.sender = getSender(request);
-		final int dataSize = getDataSize(request);
-		this.buf = new byte[Math.min(4096, dataSize)];
-		this.data = new DirectAccessByteArrayOutputStream(dataSize);
-	}
-
-	private IpAddress getSender(final HttpServletRequest request) throws BadRequestException {
-		try {
-			final String senderAddress = Objects.requireNonNull(request.getHeader("X-Sender"), "Missing header 'X-Sender'");
-			LOG.debug("Sender: {}", senderAddress);
-			return new HostAddress(senderAddress);
-		} catch (final Exception e) {
-			throw new BadRequestException(e);
-		}
-	}
-
-	private int getDataSize(final HttpServletRequest request) {
-		final long contentLengthLong = request.getContentLengthLong();
-		if (contentLengthLong == -1) {
-			LOG.warn("No Content-Length header available");
-			return 4096;
-		} else if (contentLengthLong > maxContentLength) {
-			throw new IllegalArgumentException("Content too large: " + new SizeValue(contentLengthLong));
-		} else {
-			return (int) contentLengthLong;
-		}
+		this.sequence = SequenceHeader.parse(request.getHeader(SequenceHeader.NAME));
+		this.data = new ReceiveBuffer(request.getContentLengthLong(), maxContentLength);
 	}
 
 	@Override
@@ -82,16 +57,17 @@ public class JGroupsReadListener implements ReadListener {
 		final ServletInputStream inputStream = asyncContext.getRequest().getInputStream();
 		try {
 			while (inputStream.isReady()) {
-				final int len = inputStream.read(buf);
+				final int len = data.readFrom(inputStream);
 				if (len == -1) {
 					return;
 				}
 				LOG.debug("Read {} bytes async", len);
-				if (data.size() + len > maxContentLength) {
-					throw new IllegalArgumentException("Content too large");
-				}
-				data.write(buf, 0, len);
 			}
+		} catch (final IllegalArgumentException e) {
+			LOG.warn("Rejecting message from {}: {}", sender, e.toString());
+			data.release();
+			data = null;
+			sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.toString());
 		} catch (final Exception e) {
 			LOG.error("Error in onDataAvailable()", e);
 			throw e;
@@ -105,10 +81,9 @@ public class JGroupsReadListener implements ReadListener {
 			final int messageLen = data.size();
 
 			data = null;
-			buf = null;
 
-			LOG.debug("Message read with {} bytes, calling receive()", messageData.length);
-			receiver.receive(sender, messageData, 0, messageLen);
+			LOG.debug("Message read with {} bytes, calling receive()", messageLen);
+			receiver.receive(sender, sequence, messageData, 0, messageLen);
 			asyncContext.complete();
 		} catch (final Exception e) {
 			LOG.error("Error in onAllDataRead()", e);
@@ -119,10 +94,18 @@ public class JGroupsReadListener implements ReadListener {
 	@Override
 	public void onError(final Throwable t) {
 		LOG.error("Error", t);
+		if (data != null) {
+			data.release();
+			data = null;
+		}
+		sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.toString());
+	}
+
+	private void sendError(final int statusCode, final String message) {
 		try {
 			final HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
 			response.reset();
-			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.toString());
+			response.sendError(statusCode, message);
 		} catch (final IOException e) {
 			LOG.error("Error trying to send error response", e);
 		} finally {
@@ -21,13 +21,19 @@ import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.Supplier;
 
 import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServlet;
@@ -45,6 +51,7 @@ import org.jgroups.JChannel;
 import org.jgroups.conf.ProtocolStackConfigurator;
 import org.jgroups.conf.XmlConfigurator;
 import org.jgroups.protocols.mklinger.HTTP;
+import org.jgroups.stack.IpAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -63,36 +70,86 @@ import de.mklinger.micro.annotations.Nullable;
 public class JGroupsServlet extends HttpServlet {
 	private static final String PROPS_PREFIX = "de.mklinger.jgroups.http.";
 	public static final String CHANNEL_ATTRIBUTE = PROPS_PREFIX + "channel";
+	/** Unmodifiable map of cluster name to channel, in configuration order */
+	public static final String CHANNELS_ATTRIBUTE = PROPS_PREFIX + "channels";
 	private static final String RECEIVER_ATTRIBUTE = PROPS_PREFIX + "receiver";
+	private static final String RECEIVERS_ATTRIBUTE = PROPS_PREFIX + "receivers";
 	private static final String MAX_CONTENT_LENGTH_ATTRIBUTE = PROPS_PREFIX + "maxContentLength";
+	public static final String ADMISSION_CONTROL_ATTRIBUTE = PROPS_PREFIX + "admissionControl";
+	private static final String RETRY_AFTER_ATTRIBUTE = PROPS_PREFIX + "retryAfter";
 
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOG = LoggerFactory.getLogger(JGroupsServlet.class);
 
 	@Override
 	public void init() throws ServletException {
-		initMaxContentSize();
+		initAdmissionControl();
 
 		final ProtocolStackConfigurator protocolStackConfigurator = initProtocolStack();
 		final String channelName = getSetting("channelName", () -> null);
-		final JChannel channel = createChannel(protocolStackConfigurator, channelName);
+		final List<String> clusterNames = getClusterNames();
+
+		final Map<String, JChannel> channels = new LinkedHashMap<>();
+		final Map<String, HttpReceiver> receivers = new HashMap<>();
+		for (final String clusterName : clusterNames) {
+			final JChannel channel = createChannel(protocolStackConfigurator, channelName);
+			channels.put(clusterName, channel);
+			final HTTP receiver = getReceiver(channel);
+			receiver.setAdmissionControl((AdmissionControl) getServletContext().getAttribute(ADMISSION_CONTROL_ATTRIBUTE));
+			receivers.put(clusterName, receiver);
+		}
+		initMaxContentSize(channels.values().iterator().next());
+		getServletContext().setAttribute(CHANNELS_ATTRIBUTE, Collections.unmodifiableMap(channels));
+		if (receivers.size() > 1) {
+			getServletContext().setAttribute(RECEIVERS_ATTRIBUTE, receivers);
+		}
 
 		final boolean connect = "true".equals(getSetting("connect", () -> "true"));
 		if (connect) {
-			final String clusterName = getSetting("clusterName",
-					() -> getSetting("cluster.name", // support "cluster.name" for compatibility with earlier versions
-							() -> "jgroupscluster"));
-			connectChannel(clusterName, channel);
+			channels.forEach((clusterName, channel) -> connectChannel(clusterName, channel));
 		}
 	}
 
-	private void initMaxContentSize() throws ServletException {
-		final SizeValue maxContentSize = SizeValue.parseSizeValue(getSetting("maxContentSize", () -> "500k"));
-		if (maxContentSize.singles() > Integer.MAX_VALUE) {
-			throw new IllegalArgumentException("Max content size too large: " + maxContentSize);
+	/**
+	 * Get the names of the clusters to create channels for. With more than
+	 * one cluster, requests are routed to the channels by the
+	 * {@link ClusterHeader}.
+	 */
+	private List<String> getClusterNames() {
+		final String clusterNames = getSetting("clusterNames", () -> null);
+		if (clusterNames == null) {
+			return Collections.singletonList(getSetting("clusterName",
+					() -> getSetting("cluster.name", // support "cluster.name" for compatibility with earlier versions
+							() -> "jgroupscluster")));
+		}
+		final List<String> names = new ArrayList<>();
+		for (final String clusterName : clusterNames.split(",")) {
+			if (!clusterName.trim().isEmpty() && !names.contains(clusterName.trim())) {
+				names.add(clusterName.trim());
+			}
+		}
+		if (names.isEmpty()) {
+			throw new IllegalArgumentException("No cluster names given in setting 'clusterNames'");
 		}
+		return names;
+	}
+
+	/**
+	 * Without explicit setting, the max content size is raised to fit the
+	 * fragments of the protocol stack.
+	 */
+	private void initMaxContentSize(final JChannel channel) {
+		final int maxContentLength = ReceiveBuffer.getMaxContentLength(getSetting("maxContentSize", () -> null),
+				getReceiver(channel).getRequiredMaxContentSize());
+		LOG.debug("Max content length: {}", maxContentLength);
+		getServletContext().setAttribute(MAX_CONTENT_LENGTH_ATTRIBUTE, maxContentLength);
+	}
 
-		getServletContext().setAttribute(MAX_CONTENT_LENGTH_ATTRIBUTE, (int)maxContentSize.singles());
+	private void initAdmissionControl() {
+		final int maxConcurrentRequests = Integer.parseInt(getSetting("maxConcurrentRequests", () -> "1024"));
+		final SizeValue maxBufferedSize = SizeValue.parseSizeValue(getSetting("maxBufferedSize", () -> "64m"));
+		getServletContext().setAttribute(ADMISSION_CONTROL_ATTRIBUTE, new AdmissionControl(maxConcurrentRequests, maxBufferedSize.singles()));
+		getServletContext().setAttribute(RETRY_AFTER_ATTRIBUTE, getSetting("retryAfter", () -> AdmissionControl.DEFAULT_RETRY_AFTER));
 	}
 
 	private ProtocolStackConfigurator initProtocolStack() throws ServletException {
@@ -211,16 +268,22 @@ public class JGroupsServlet extends HttpServlet {
 			channel.setName(channelName);
 		}
 
-		getServletContext().setAttribute(CHANNEL_ATTRIBUTE, channel);
+		if (getServletContext().getAttribute(CHANNEL_ATTRIBUTE) == null) {
+			// The first channel is the default channel
+			getServletContext().setAttribute(CHANNEL_ATTRIBUTE, channel);
+			getServletContext().setAttribute(RECEIVER_ATTRIBUTE, getReceiver(channel));
+		}
 
+		onChannelCreated(channel);
+		return channel;
+	}
+
+	private static HTTP getReceiver(final JChannel channel) {
 		final HTTP httpProtocol = (HTTP) channel.getProtocolStack().getTransport();
 		if (httpProtocol == null) {
 			throw new IllegalStateException("HTTP protocol not found in channel protocol stack");
 		}
-		getServletContext().setAttribute(RECEIVER_ATTRIBUTE, httpProtocol);
-
-		onChannelCreated(channel);
-		return channel;
+		return httpProtocol;
 	}
 
 	private void connectChannel(final String clusterName, JChannel channel) {
@@ -266,16 +329,22 @@ public class JGroupsServlet extends HttpServlet {
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public void destroy() {
-		final JChannel channel = (JChannel) getServletContext().getAttribute(CHANNEL_ATTRIBUTE);
-		if (channel != null) {
-			getServletContext().removeAttribute(CHANNEL_ATTRIBUTE);
-			try {
-				onChannelClose(channel);
-			} catch (final Exception e) {
-				LOG.warn("Error in onChannelClose callback", e);
+		final Map<String, JChannel> channels = (Map<String, JChannel>) getServletContext().getAttribute(CHANNELS_ATTRIBUTE);
+		getServletContext().removeAttribute(CHANNEL_ATTRIBUTE);
+		getServletContext().removeAttribute(CHANNELS_ATTRIBUTE);
+		getServletContext().removeAttribute(RECEIVER_ATTRIBUTE);
+		getServletContext().removeAttribute(RECEIVERS_ATTRIBUTE);
+		if (channels != null) {
+			for (final JChannel channel : channels.values()) {
+				try {
+					onChannelClose(channel);
+				} catch (final Exception e) {
+					LOG.warn("Error in onChannelClose callback", e);
+				}
+				Closeables.closeUnchecked(channel);
 			}
-			Closeables.closeUnchecked(channel);
 		}
 	}
 
@@ -283,26 +352,145 @@ public class JGroupsServlet extends HttpServlet {
 	protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		LOG.debug("Service: {}", request.getMethod(), request.getRequestURL());
 
-		final HttpReceiver receiver = (HttpReceiver) getServletContext().getAttribute(RECEIVER_ATTRIBUTE);
+		final HttpReceiver receiver;
+		try {
+			receiver = getReceiver(request);
+		} catch (final BadRequestException e) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+			return;
+		}
+
+		if (!"POST".equals(request.getMethod())) {
+			serviceProbe(request, response, receiver);
+			return;
+		}
+
 		if (receiver == null) {
 			throw new IllegalStateException("No receiver");
 		}
 
 		final int maxContentLength = (int) getServletContext().getAttribute(MAX_CONTENT_LENGTH_ATTRIBUTE);
 
-		final AsyncContext asyncContext = request.startAsync();
+		final AdmissionControl admissionControl = (AdmissionControl) getServletContext().getAttribute(ADMISSION_CONTROL_ATTRIBUTE);
+		final IpAddress sender;
+		try {
+			sender = SenderHeader.parse(request.getHeader(SenderHeader.NAME));
+		} catch (final BadRequestException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.toString());
+			return;
+		}
+		if (receiver.isOverloaded(sender)) {
+			admissionControl.rejected();
+			sendServiceUnavailable(response);
+			return;
+		}
+		final long contentLength = request.getContentLengthLong();
+		final long reservedBytes = contentLength >= 0 ? Math.min(contentLength, maxContentLength) : maxContentLength;
+		if (!admissionControl.tryAcquire(reservedBytes)) {
+			LOG.debug("Rejecting message, too many messages in progress: {}", admissionControl);
+			sendServiceUnavailable(response);
+			return;
+		}
+
+		final AsyncContext asyncContext;
+		try {
+			asyncContext = request.startAsync();
+			asyncContext.addListener(new AdmissionReleaseListener(admissionControl, reservedBytes));
+		} catch (final RuntimeException e) {
+			admissionControl.release(reservedBytes);
+			throw e;
+		}
 		final ServletInputStream inputStream = request.getInputStream();
 		try {
-			inputStream.setReadListener(new JGroupsReadListener(asyncContext, receiver, maxContentLength));
+			inputStream.setReadListener(new JGroupsReadListener(asyncContext, receiver, sender, maxContentLength));
 		} catch (final BadRequestException e) {
 			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.toString());
 			asyncContext.complete();
+		} catch (final IllegalArgumentException e) {
+			LOG.warn("Rejecting message from {}: {}", sender, e.toString());
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.toString());
+			asyncContext.complete();
 		} catch (final Exception e) {
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			asyncContext.complete();
 		}
 	}
 
+	/**
+	 * Answer early with status 503, so the sender pauses sending to this node.
+	 */
+	private void sendServiceUnavailable(final HttpServletResponse response) throws IOException {
+		response.setHeader(AdmissionControl.RETRY_AFTER_HEADER, (String) getServletContext().getAttribute(RETRY_AFTER_ATTRIBUTE));
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	/**
+	 * Releases the resources reserved for a message when its request is
+	 * completed, whether successful or not.
+	 */
+	private static class AdmissionReleaseListener implements AsyncListener {
+		private final AdmissionControl admissionControl;
+		private final long reservedBytes;
+
+		AdmissionReleaseListener(final AdmissionControl admissionControl, final long reservedBytes) {
+			this.admissionControl = admissionControl;
+			this.reservedBytes = reservedBytes;
+		}
+
+		@Override
+		public void onComplete(final AsyncEvent event) {
+			admissionControl.release(reservedBytes);
+		}
+
+		@Override
+		public void onTimeout(final AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(final AsyncEvent event) {
+		}
+
+		@Override
+		public void onStartAsync(final AsyncEvent event) {
+		}
+	}
+
+	/**
+	 * Get the receiver for the cluster named in the request. Requests without
+	 * cluster name and all requests to a servlet with a single channel go to
+	 * the default receiver.
+	 * @throws BadRequestException If the servlet has several channels, but
+	 *         none for the cluster named in the request
+	 */
+	@SuppressWarnings("unchecked")
+	private HttpReceiver getReceiver(final HttpServletRequest request) throws BadRequestException {
+		final Map<String, HttpReceiver> receivers = (Map<String, HttpReceiver>) getServletContext().getAttribute(RECEIVERS_ATTRIBUTE);
+		final String clusterName = request.getHeader(ClusterHeader.NAME);
+		if (receivers == null || clusterName == null) {
+			return (HttpReceiver) getServletContext().getAttribute(RECEIVER_ATTRIBUTE);
+		}
+		final HttpReceiver receiver = receivers.get(clusterName);
+		if (receiver == null) {
+			throw new BadRequestException("Unknown cluster: '" + clusterName + "'");
+		}
+		return receiver;
+	}
+
+	/**
+	 * Requests without message are used by other nodes to open and keep alive
+	 * connections. Answer them as cheap as possible.
+	 */
+	private void serviceProbe(final HttpServletRequest request, final HttpServletResponse response, final HttpReceiver receiver) throws IOException {
+		final String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method)) {
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+		} else if (receiver == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		} else {
+			response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+		}
+	}
+
 	/**
 	 * Callback method for sub-classes. Default implementation does nothing.
 	 * @param channel The channel that was created
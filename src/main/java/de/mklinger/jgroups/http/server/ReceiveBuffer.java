@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.jgroups.http.common.SizeValue;
+
+/**
+ * Collects the body of a message request, up to a maximum size. Used by all
+ * receive integrations.
+ * <p>
+ * Bodies with announced content length are received into a single array of
+ * that size, which is handed to the protocol stack without copy. Bodies of
+ * unknown length are received into chunks and copied into a single array
+ * once complete, instead of growing and copying an array repeatedly.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class ReceiveBuffer {
+	private static final Logger LOG = LoggerFactory.getLogger(ReceiveBuffer.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/** Default max content length of all receive integrations */
+	public static final String DEFAULT_MAX_CONTENT_SIZE = "500k";
+
+	private final int maxContentLength;
+	/** All chunks but the last one are full */
+	private final List<byte[]> chunks = new ArrayList<>(1);
+	private int lastChunkSize;
+	private int size;
+	private byte[] buffer;
+
+	/**
+	 * @param contentLength The announced content length or -1 if unknown
+	 * @param maxContentLength The maximum content length
+	 * @throws IllegalArgumentException If the content length exceeds the maximum
+	 */
+	public ReceiveBuffer(final long contentLength, final int maxContentLength) {
+		this.maxContentLength = maxContentLength;
+		if (contentLength > maxContentLength) {
+			throw new IllegalArgumentException("Content too large: " + new SizeValue(contentLength));
+		}
+		if (contentLength == -1) {
+			LOG.debug("No Content-Length header available, receiving into chunks");
+		} else if (contentLength > 0) {
+			chunks.add(new byte[(int) contentLength]);
+		}
+	}
+
+	public void append(final byte[] b, final int offset, final int length) {
+		checkSize(length);
+		int done = 0;
+		while (done < length) {
+			final byte[] chunk = writableChunk();
+			final int len = Math.min(length - done, chunk.length - lastChunkSize);
+			System.arraycopy(b, offset + done, chunk, lastChunkSize, len);
+			added(len);
+			done += len;
+		}
+	}
+
+	/**
+	 * Append the remaining bytes of the given buffer.
+	 */
+	public void append(final ByteBuffer b) {
+		checkSize(b.remaining());
+		while (b.hasRemaining()) {
+			final byte[] chunk = writableChunk();
+			final int len = Math.min(b.remaining(), chunk.length - lastChunkSize);
+			b.get(chunk, lastChunkSize, len);
+			added(len);
+		}
+	}
+
+	/**
+	 * Read from the given stream directly into this buffer, without
+	 * intermediate copy. Reads at most once from the stream.
+	 * @return The number of bytes read or -1 at the end of the stream
+	 */
+	public int readFrom(final InputStream in) throws IOException {
+		final byte[] chunk = writableChunk();
+		// Allow one byte more than the maximum to detect too large content
+		final int max = (int) Math.min(chunk.length - lastChunkSize, (long) maxContentLength - size + 1);
+		final int len = in.read(chunk, lastChunkSize, max);
+		if (len > 0) {
+			checkSize(len);
+			added(len);
+		}
+		return len;
+	}
+
+	private void checkSize(final int length) {
+		if ((long) size + length > maxContentLength) {
+			throw new IllegalArgumentException("Content too large");
+		}
+	}
+
+	private byte[] writableChunk() {
+		if (buffer != null) {
+			throw new IllegalStateException("Buffer already complete");
+		}
+		if (!chunks.isEmpty()) {
+			final byte[] lastChunk = chunks.get(chunks.size() - 1);
+			if (lastChunkSize < lastChunk.length) {
+				return lastChunk;
+			}
+		}
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		chunks.add(chunk);
+		lastChunkSize = 0;
+		return chunk;
+	}
+
+	private void added(final int length) {
+		lastChunkSize += length;
+		size += length;
+	}
+
+	/**
+	 * Complete the buffer. No data can be appended afterwards.
+	 * @return The data, holding exactly {@link #size()} bytes
+	 */
+	public byte[] getBuffer() {
+		if (buffer == null) {
+			if (chunks.size() == 1 && lastChunkSize == chunks.get(0).length) {
+				buffer = chunks.remove(0);
+			} else {
+				buffer = new byte[size];
+				int pos = 0;
+				for (final byte[] chunk : chunks) {
+					final int len = Math.min(chunk.length, size - pos);
+					System.arraycopy(chunk, 0, buffer, pos, len);
+					pos += len;
+				}
+				release();
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * Drop the data appended so far, e.g. when the request failed, so it can
+	 * be garbage collected while the request is still referenced.
+	 */
+	public void release() {
+		chunks.clear();
+		lastChunkSize = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the max content length to receive. A configured size is used as is,
+	 * with a warning if it is smaller than the required size. Otherwise the
+	 * default is raised to the required size, so messages the protocol stack
+	 * sends, like fragments of FRAG2, are not rejected.
+	 * @param configuredSize The configured size or <code>null</code> if not
+	 *        configured
+	 * @param requiredSize The size required by the protocol stack or 0 if
+	 *        unknown
+	 * @throws IllegalArgumentException If the size exceeds the max array size
+	 */
+	public static int getMaxContentLength(final String configuredSize, final long requiredSize) {
+		final long maxContentLength;
+		if (configuredSize == null) {
+			maxContentLength = Math.max(SizeValue.parseSizeValue(DEFAULT_MAX_CONTENT_SIZE).singles(), requiredSize);
+		} else {
+			maxContentLength = SizeValue.parseSizeValue(configuredSize.trim()).singles();
+			if (maxContentLength < requiredSize) {
+				LOG.warn("Max content size {} is smaller than {} required by the protocol stack, larger messages "
+						+ "are rejected with status 413", new SizeValue(maxContentLength), new SizeValue(requiredSize));
+			}
+		}
+		if (maxContentLength > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Max content size too large: " + new SizeValue(maxContentLength));
+		}
+		return (int) maxContentLength;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server;
+
+import java.util.Objects;
+
+import org.jgroups.protocols.mklinger.HostAddresses;
+import org.jgroups.stack.IpAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The header carrying the physical address of the sending node.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class SenderHeader {
+	private static final Logger LOG = LoggerFactory.getLogger(SenderHeader.class);
+
+	public static final String NAME = "X-Sender";
+
+	/** No instantiation */
+	private SenderHeader() {}
+
+	/**
+	 * @param value The header value, may be <code>null</code> if missing
+	 * @throws BadRequestException If the header is missing or invalid
+	 */
+	public static IpAddress parse(final String value) throws BadRequestException {
+		try {
+			final String senderAddress = Objects.requireNonNull(value, "Missing header '" + NAME + "'");
+			LOG.debug("Sender: {}", senderAddress);
+			return HostAddresses.valueOf(senderAddress);
+		} catch (final Exception e) {
+			throw new BadRequestException(e);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server;
+
+/**
+ * The header carrying the transport sequence number of a message, in the
+ * form <code>epoch:seq</code>. The sender numbers messages per destination,
+ * starting with 0 for each new epoch, so the receiver can restore the send
+ * order of messages whose requests overtook each other.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class SequenceHeader {
+	public static final String NAME = "X-Seq";
+
+	private final long epoch;
+	private final long seq;
+
+	public SequenceHeader(final long epoch, final long seq) {
+		this.epoch = epoch;
+		this.seq = seq;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	/**
+	 * @param value The header value, may be <code>null</code> if missing
+	 * @return The parsed header or <code>null</code> if missing
+	 * @throws BadRequestException If the header is invalid
+	 */
+	public static SequenceHeader parse(final String value) throws BadRequestException {
+		if (value == null) {
+			return null;
+		}
+		final int idx = value.indexOf(':');
+		if (idx == -1) {
+			throw new BadRequestException("Invalid header '" + NAME + "': " + value);
+		}
+		try {
+			return new SequenceHeader(Long.parseLong(value.substring(0, idx)), Long.parseLong(value.substring(idx + 1)));
+		} catch (final NumberFormatException e) {
+			throw new BadRequestException("Invalid header '" + NAME + "': " + value, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return epoch + ":" + seq;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server.jetty;
+
+import static de.mklinger.jgroups.http.server.jetty.ServerConstants.*;
+
+import java.net.InetSocketAddress;
+import java.util.Properties;
+
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.RawHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.jgroups.http.common.SizeValue;
+import de.mklinger.jgroups.http.server.AdmissionControl;
+import de.mklinger.jgroups.http.server.HttpReceiver;
+import de.mklinger.jgroups.http.server.ReceiveBuffer;
+import de.mklinger.micro.keystores.KeyStores;
+
+/**
+ * Minimal HTTP/2 server for cluster traffic only, for nodes without a host
+ * web application. Uses a {@link JGroupsSessionListener} on a dedicated
+ * thread pool, with large flow control windows and without servlet pipeline.
+ * Speaks HTTP/2 over TLS with ALPN when secure, cleartext HTTP/2 (h2c with
+ * prior knowledge) otherwise.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class EmbeddedServer implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(EmbeddedServer.class);
+
+	private static final String DEFAULT_SESSION_RECV_WINDOW = "16m";
+	private static final String DEFAULT_STREAM_RECV_WINDOW = "8m";
+	private static final String DEFAULT_MAX_BUFFERED_SIZE = "64m";
+
+	private final Server server;
+	private final ServerConnector connector;
+	private final AdmissionControl admissionControl;
+
+	/**
+	 * @param receiver The receiver for messages, usually the HTTP protocol
+	 * @param bindAddress The address to listen on. Port 0 selects a free port.
+	 * @param path The service path, e.g. "/jgroups"
+	 * @param secure <code>true</code> for HTTPS, <code>false</code> for cleartext HTTP
+	 * @param serverProperties Server settings, see {@link ServerConstants}
+	 */
+	public EmbeddedServer(final HttpReceiver receiver, final InetSocketAddress bindAddress, final String path, final boolean secure, final Properties serverProperties) {
+		final QueuedThreadPool threadPool = new QueuedThreadPool(getInt(serverProperties, MAX_THREADS, 16), 2);
+		threadPool.setName("jgroups-http-server");
+		threadPool.setDaemon(true);
+		this.server = new Server(threadPool);
+
+		final HttpConfiguration httpConfig = new HttpConfiguration();
+		httpConfig.setSendServerVersion(false);
+		httpConfig.setSendDateHeader(false);
+
+		final int maxContentLength = ReceiveBuffer.getMaxContentLength(serverProperties.getProperty(MAX_CONTENT_SIZE), 0);
+		this.admissionControl = new AdmissionControl(getInt(serverProperties, MAX_CONCURRENT_REQUESTS, 1024),
+				SizeValue.parseSizeValue(serverProperties.getProperty(MAX_BUFFERED_SIZE, DEFAULT_MAX_BUFFERED_SIZE)).singles());
+		final String retryAfter = serverProperties.getProperty(RETRY_AFTER, AdmissionControl.DEFAULT_RETRY_AFTER).trim();
+		final JGroupsSessionListener listener = new JGroupsSessionListener(receiver, path, maxContentLength, threadPool,
+				admissionControl, retryAfter);
+
+		final RawHTTP2ServerConnectionFactory h2 = new RawHTTP2ServerConnectionFactory(httpConfig, listener, secure ? "h2" : "h2c");
+		h2.setInitialSessionRecvWindow((int) getSize(serverProperties, SESSION_RECV_WINDOW, DEFAULT_SESSION_RECV_WINDOW));
+		h2.setInitialStreamRecvWindow((int) getSize(serverProperties, STREAM_RECV_WINDOW, DEFAULT_STREAM_RECV_WINDOW));
+		h2.setMaxConcurrentStreams(getInt(serverProperties, MAX_CONCURRENT_STREAMS, 1024));
+
+		final int acceptors = getInt(serverProperties, ACCEPTORS, 1);
+		final int selectors = getInt(serverProperties, SELECTORS, 1);
+		if (secure) {
+			final ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(h2.getProtocol());
+			alpn.setDefaultProtocol(h2.getProtocol());
+			final SslConnectionFactory ssl = new SslConnectionFactory(newSslContextFactory(serverProperties), alpn.getProtocol());
+			this.connector = new ServerConnector(server, acceptors, selectors, ssl, alpn, h2);
+		} else {
+			this.connector = new ServerConnector(server, acceptors, selectors, h2);
+		}
+		connector.setHost(bindAddress.getHostString());
+		connector.setPort(bindAddress.getPort());
+		connector.setIdleTimeout(getLong(serverProperties, IDLE_TIMEOUT, 5 * 60 * 1000));
+		server.addConnector(connector);
+	}
+
+	private SslContextFactory newSslContextFactory(final Properties serverProperties) {
+		final SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+
+		final String keystoreLocation = serverProperties.getProperty(KEYSTORE_LOCATION);
+		if (keystoreLocation == null) {
+			throw new IllegalArgumentException("Server setting '" + KEYSTORE_LOCATION + "' is required for HTTPS");
+		}
+		LOG.info("Using HTTP server keystore from '{}'", keystoreLocation);
+		final String keystorePassword = serverProperties.getProperty(KEYSTORE_PASSWORD);
+		sslContextFactory.setKeyStore(KeyStores.load(keystoreLocation, keystorePassword));
+		sslContextFactory.setKeyStorePassword(keystorePassword);
+		sslContextFactory.setKeyManagerPassword(serverProperties.getProperty(KEY_PASSWORD, keystorePassword));
+
+		final String truststoreLocation = serverProperties.getProperty(TRUSTSTORE_LOCATION);
+		if (truststoreLocation != null) {
+			LOG.info("Using HTTP server truststore from '{}'", truststoreLocation);
+			sslContextFactory.setTrustStore(KeyStores.load(truststoreLocation, serverProperties.getProperty(TRUSTSTORE_PASSWORD)));
+		}
+		sslContextFactory.setNeedClientAuth("true".equals(serverProperties.getProperty(SSL_NEED_CLIENT_AUTH)));
+
+		final String provider = serverProperties.getProperty(SSL_PROVIDER);
+		if (provider != null) {
+			LOG.info("Using HTTP server SSL provider {}", provider);
+			sslContextFactory.setProvider(provider);
+		}
+		final String protocols = serverProperties.getProperty(SSL_PROTOCOLS);
+		if (protocols != null) {
+			sslContextFactory.setIncludeProtocols(toList(protocols));
+		}
+		final String cipherSuites = serverProperties.getProperty(SSL_CIPHER_SUITES);
+		if (cipherSuites != null) {
+			sslContextFactory.setIncludeCipherSuites(toList(cipherSuites));
+		}
+		sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+		sslContextFactory.setUseCipherSuitesOrder(true);
+		return sslContextFactory;
+	}
+
+	/**
+	 * Lists are separated by whitespace or colons, like the client settings.
+	 */
+	private static String[] toList(final String value) {
+		return value.trim().split("[\\s:]+");
+	}
+
+	private static int getInt(final Properties properties, final String key, final int defaultValue) {
+		final String value = properties.getProperty(key);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private static long getLong(final Properties properties, final String key, final long defaultValue) {
+		final String value = properties.getProperty(key);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	private static long getSize(final Properties properties, final String key, final String defaultValue) {
+		final long size = SizeValue.parseSizeValue(properties.getProperty(key, defaultValue)).singles();
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Server setting '" + key + "' too large: " + size);
+		}
+		return size;
+	}
+
+	public void start() throws Exception {
+		server.start();
+		LOG.info("Embedded HTTP server listening on port {}", getLocalPort());
+	}
+
+	/**
+	 * @return The limits for messages received concurrently, with the
+	 *         number of requests in progress and rejected
+	 */
+	public AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	/**
+	 * @return The port the server listens on, or a negative value if not started
+	 */
+	public int getLocalPort() {
+		return connector.getLocalPort();
+	}
+
+	@Override
+	public void close() throws Exception {
+		server.stop();
+	}
+}
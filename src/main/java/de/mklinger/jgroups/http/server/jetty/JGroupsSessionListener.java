@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server.jetty;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.util.Callback;
+import org.jgroups.stack.IpAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.jgroups.http.server.AdmissionControl;
+import de.mklinger.jgroups.http.server.BadRequestException;
+import de.mklinger.jgroups.http.server.HttpReceiver;
+import de.mklinger.jgroups.http.server.ReceiveBuffer;
+import de.mklinger.jgroups.http.server.SenderHeader;
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+/**
+ * Receives messages directly from Jetty HTTP/2 streams, without the servlet
+ * pipeline. Request body frames are collected and passed to the receiver when
+ * the stream ends. Answers requests the same way as
+ * {@link de.mklinger.jgroups.http.server.JGroupsServlet}, including the
+ * rejection of messages exceeding the limits of the {@link AdmissionControl}.
+ * <p>
+ * Jetty may call stream listeners on selector threads, so complete messages
+ * are passed to the receiver on the given executor, usually the thread pool
+ * of the server.
+ * <p>
+ * Use with a dedicated connector, e.g.
+ * <code>new ServerConnector(server, new RawHTTP2ServerConnectionFactory(httpConfig, listener))</code>
+ * for cleartext HTTP/2 (h2c) or with SSL and ALPN connection factories in
+ * front of it for HTTPS. Requires <code>org.eclipse.jetty.http2:http2-server</code>
+ * on the classpath.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class JGroupsSessionListener extends ServerSessionListener.Adapter {
+	private static final Logger LOG = LoggerFactory.getLogger(JGroupsSessionListener.class);
+
+	private final HttpReceiver receiver;
+	private final String path;
+	private final int maxContentLength;
+	private final Executor executor;
+	private final AdmissionControl admissionControl;
+	private final String retryAfter;
+
+	/**
+	 * @param receiver The receiver for messages, usually the HTTP protocol
+	 * @param path The service path, e.g. "/jgroups", or <code>null</code> to
+	 *        accept any path. An empty path is the root path "/".
+	 * @param maxContentLength The maximum message size
+	 * @param executor The executor to pass messages to the receiver on,
+	 *        usually the thread pool of the server
+	 * @param admissionControl The limits for messages received concurrently
+	 * @param retryAfter The seconds to send in the Retry-After header of
+	 *        rejected messages
+	 */
+	public JGroupsSessionListener(final HttpReceiver receiver, final String path, final int maxContentLength, final Executor executor,
+			final AdmissionControl admissionControl, final String retryAfter) {
+		this.receiver = Objects.requireNonNull(receiver);
+		this.path = path == null ? null : normalizePath(path);
+		this.maxContentLength = maxContentLength;
+		this.executor = Objects.requireNonNull(executor);
+		this.admissionControl = Objects.requireNonNull(admissionControl);
+		this.retryAfter = Objects.requireNonNull(retryAfter);
+	}
+
+	/**
+	 * The request path of a URI without path, e.g. as requested with an
+	 * empty external_path, is "/" or empty, depending on the client.
+	 */
+	private static String normalizePath(final String path) {
+		return path == null || path.isEmpty() ? "/" : path;
+	}
+
+	@Override
+	public Stream.Listener onNewStream(final Stream stream, final HeadersFrame frame) {
+		if (!frame.getMetaData().isRequest()) {
+			respond(stream, HttpStatus.BAD_REQUEST_400);
+			return null;
+		}
+		final MetaData.Request request = (MetaData.Request) frame.getMetaData();
+		LOG.debug("Service: {} {}", request.getMethod(), request.getURI());
+
+		if (path != null && !path.equals(normalizePath(request.getURI().getPath()))) {
+			reject(stream, frame, HttpStatus.NOT_FOUND_404, new HttpFields());
+			return null;
+		}
+
+		if (!"POST".equals(request.getMethod())) {
+			serviceProbe(stream, request);
+			return null;
+		}
+
+		final MessageListener messageListener;
+		try {
+			final IpAddress sender = SenderHeader.parse(request.getFields().get(SenderHeader.NAME));
+			if (receiver.isOverloaded(sender)) {
+				LOG.debug("Rejecting message, receiver overloaded for sender {}", sender);
+				admissionControl.rejected();
+				reject(stream, frame, HttpStatus.SERVICE_UNAVAILABLE_503, serviceUnavailableFields());
+				return null;
+			}
+			final SequenceHeader sequence = SequenceHeader.parse(request.getFields().get(SequenceHeader.NAME));
+			final long contentLength = request.getContentLength();
+			final long reservedBytes = contentLength >= 0 ? Math.min(contentLength, maxContentLength) : maxContentLength;
+			if (!admissionControl.tryAcquire(reservedBytes)) {
+				LOG.debug("Rejecting message, too many messages in progress: {}", admissionControl);
+				reject(stream, frame, HttpStatus.SERVICE_UNAVAILABLE_503, serviceUnavailableFields());
+				return null;
+			}
+			try {
+				messageListener = new MessageListener(sender, sequence, new ReceiveBuffer(contentLength, maxContentLength), reservedBytes);
+			} catch (final IllegalArgumentException e) {
+				admissionControl.release(reservedBytes);
+				throw e;
+			}
+		} catch (final BadRequestException e) {
+			LOG.debug("Bad request: {}", e.toString());
+			reject(stream, frame, HttpStatus.BAD_REQUEST_400, new HttpFields());
+			return null;
+		} catch (final IllegalArgumentException e) {
+			LOG.warn("Rejecting message: {}", e.toString());
+			reject(stream, frame, HttpStatus.PAYLOAD_TOO_LARGE_413, new HttpFields());
+			return null;
+		}
+
+		if (frame.isEndStream()) {
+			// no body
+			messageListener.dispatch(stream);
+			return null;
+		}
+		return messageListener;
+	}
+
+	/**
+	 * Answer early with status 503, so the sender pauses sending to this node.
+	 */
+	private HttpFields serviceUnavailableFields() {
+		final HttpFields fields = new HttpFields();
+		fields.put(AdmissionControl.RETRY_AFTER_HEADER, retryAfter);
+		return fields;
+	}
+
+	/**
+	 * Requests without message are used by other nodes to open and keep alive
+	 * connections. Answer them as cheap as possible.
+	 */
+	private void serviceProbe(final Stream stream, final MetaData.Request request) {
+		final String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method)) {
+			respond(stream, HttpStatus.METHOD_NOT_ALLOWED_405);
+		} else {
+			respond(stream, HttpStatus.NO_CONTENT_204);
+		}
+	}
+
+	private static void respond(final Stream stream, final int status) {
+		respond(stream, status, new HttpFields());
+	}
+
+	private static void respond(final Stream stream, final int status, final HttpFields fields) {
+		respond(stream, status, fields, Callback.NOOP);
+	}
+
+	private static void respond(final Stream stream, final int status, final HttpFields fields, final Callback callback) {
+		final MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, status, fields);
+		stream.headers(new HeadersFrame(stream.getId(), response, null, true), callback);
+	}
+
+	/**
+	 * Answer a request without reading its body.
+	 */
+	private static void reject(final Stream stream, final HeadersFrame frame, final int status, final HttpFields fields) {
+		if (frame.isEndStream()) {
+			respond(stream, status, fields);
+		} else {
+			respondAndReset(stream, status, fields);
+		}
+	}
+
+	/**
+	 * Answer before the request body is complete and reset the stream, so
+	 * the client stops sending the rest of the body (RFC 7540, 8.1).
+	 */
+	private static void respondAndReset(final Stream stream, final int status, final HttpFields fields) {
+		respond(stream, status, fields, new Callback() {
+			@Override
+			public void succeeded() {
+				reset();
+			}
+
+			@Override
+			public void failed(final Throwable x) {
+				reset();
+			}
+
+			private void reset() {
+				stream.reset(new ResetFrame(stream.getId(), ErrorCode.NO_ERROR.code), Callback.NOOP);
+			}
+		});
+	}
+
+	private class MessageListener extends Stream.Listener.Adapter {
+		private final IpAddress sender;
+		private final SequenceHeader sequence;
+		private ReceiveBuffer data;
+		private final long reservedBytes;
+		private final AtomicBoolean admitted = new AtomicBoolean(true);
+
+		MessageListener(final IpAddress sender, final SequenceHeader sequence, final ReceiveBuffer data, final long reservedBytes) {
+			this.sender = sender;
+			this.sequence = sequence;
+			this.data = data;
+			this.reservedBytes = reservedBytes;
+		}
+
+		/**
+		 * Release the resources reserved for the message, once, whether it
+		 * was received or not.
+		 */
+		private void releaseAdmission() {
+			if (admitted.compareAndSet(true, false)) {
+				admissionControl.release(reservedBytes);
+			}
+		}
+
+		@Override
+		public void onData(final Stream stream, final DataFrame frame, final Callback callback) {
+			if (data == null) {
+				// already answered
+				callback.succeeded();
+				return;
+			}
+			try {
+				data.append(frame.getData());
+			} catch (final IllegalArgumentException e) {
+				LOG.warn("Rejecting message from {}: {}", sender, e.toString());
+				data.release();
+				data = null;
+				releaseAdmission();
+				callback.succeeded();
+				respondAndReset(stream, HttpStatus.PAYLOAD_TOO_LARGE_413, new HttpFields());
+				return;
+			}
+			// Data is copied, so the frame buffer can be released and the
+			// flow control window can be updated right away
+			callback.succeeded();
+			if (frame.isEndStream()) {
+				dispatch(stream);
+			}
+		}
+
+		/**
+		 * Pass the message to the receiver on the executor, not on the
+		 * calling Jetty thread.
+		 */
+		void dispatch(final Stream stream) {
+			try {
+				executor.execute(() -> deliver(stream));
+			} catch (final RejectedExecutionException e) {
+				LOG.debug("Rejecting message from {}, no thread available", sender);
+				data.release();
+				data = null;
+				releaseAdmission();
+				admissionControl.rejected();
+				respond(stream, HttpStatus.SERVICE_UNAVAILABLE_503, serviceUnavailableFields());
+			}
+		}
+
+		private void deliver(final Stream stream) {
+			final ReceiveBuffer messageData = data;
+			data = null;
+			try {
+				LOG.debug("Message read with {} bytes, calling receive()", messageData.size());
+				receiver.receive(sender, sequence, messageData.getBuffer(), 0, messageData.size());
+				respond(stream, HttpStatus.OK_200);
+			} catch (final Exception e) {
+				LOG.error("Error receiving message from {}", sender, e);
+				respond(stream, HttpStatus.INTERNAL_SERVER_ERROR_500);
+			} finally {
+				releaseAdmission();
+			}
+		}
+
+		@Override
+		public void onReset(final Stream stream, final ResetFrame frame) {
+			LOG.debug("Stream from {} reset: {}", sender, frame.getError());
+			if (data != null) {
+				data.release();
+				data = null;
+			}
+			releaseAdmission();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mklinger.jgroups.http.server.jetty;
+
+/**
+ * Settings for the {@link EmbeddedServer}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface ServerConstants {
+	String KEYSTORE_LOCATION = "ssl.key-store";
+	String KEYSTORE_PASSWORD = "ssl.key-store-password";
+	String KEY_PASSWORD = "ssl.key-password";
+	String TRUSTSTORE_LOCATION = "ssl.trust-store";
+	String TRUSTSTORE_PASSWORD = "ssl.trust-store-password";
+	String SSL_NEED_CLIENT_AUTH = "ssl.need-client-auth";
+	String SSL_PROVIDER = "ssl.provider";
+	String SSL_PROTOCOLS = "ssl.protocols";
+	String SSL_CIPHER_SUITES = "ssl.cipher-suites";
+	String ACCEPTORS = "acceptors";
+	String SELECTORS = "selectors";
+	String MAX_THREADS = "max-threads";
+	String IDLE_TIMEOUT = "idle-timeout";
+	String MAX_CONCURRENT_STREAMS = "max-concurrent-streams";
+	String SESSION_RECV_WINDOW = "session-recv-window";
+	String STREAM_RECV_WINDOW = "stream-recv-window";
+	String MAX_CONTENT_SIZE = "max-content-size";
+	String MAX_CONCURRENT_REQUESTS = "max-concurrent-requests";
+	String MAX_BUFFERED_SIZE = "max-buffered-size";
+	String RETRY_AFTER = "retry-after";
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for a single destination. Opens after a number of
+ * consecutive failures, so messages to a dead destination fail fast. While
+ * open, a probe is sent from time to time. The breaker is half open while the
+ * probe is in flight and closes when the probe succeeds.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class CircuitBreaker {
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private volatile State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedCount;
+	/** Nano time the breaker opened after being closed */
+	private volatile long openSinceNanos;
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return <code>true</code> if requests should fail fast
+	 */
+	public boolean isOpen() {
+		return state != State.CLOSED;
+	}
+
+	/**
+	 * Record a success and close the breaker.
+	 * @return <code>true</code> if the breaker was not closed before
+	 */
+	public synchronized boolean onSuccess() {
+		consecutiveFailures = 0;
+		final boolean wasOpen = state != State.CLOSED;
+		state = State.CLOSED;
+		return wasOpen;
+	}
+
+	/**
+	 * @param nowNanos The current nano time
+	 * @return The time in ms the breaker is open, including failed probes,
+	 *         or -1 if closed
+	 */
+	public long getMillisOpen(final long nowNanos) {
+		if (state == State.CLOSED) {
+			return -1;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(nowNanos - openSinceNanos);
+	}
+
+	/**
+	 * Record a failure. A failure while half open opens the breaker again.
+	 * @param threshold The number of consecutive failures to open the breaker
+	 * @return <code>true</code> if the breaker was opened by this failure, so
+	 *         the caller should schedule a probe
+	 */
+	public boolean onFailure(final int threshold) {
+		return onFailure(threshold, System.nanoTime());
+	}
+
+	/**
+	 * @param nowNanos The current nano time
+	 * @see #onFailure(int)
+	 */
+	synchronized boolean onFailure(final int threshold, final long nowNanos) {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN) {
+			state = State.OPEN;
+			openedCount++;
+			return true;
+		}
+		if (state == State.CLOSED && consecutiveFailures >= threshold) {
+			openSinceNanos = nowNanos;
+			state = State.OPEN;
+			openedCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if the breaker was open and is half open now,
+	 *         so the caller should send a probe
+	 */
+	public synchronized boolean startProbe() {
+		if (state != State.OPEN) {
+			return false;
+		}
+		state = State.HALF_OPEN;
+		return true;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return state + " (consecutive failures: " + consecutiveFailures + ", opened: " + openedCount + " times)";
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jgroups.PhysicalAddress;
+
+/**
+ * Tracks the destinations an HTTP client is connected to, as far as the
+ * transport can tell: the client does not report when it opens a connection.
+ * A destination counts as connected from the end of the first successful
+ * exchange until a request fails with a connection error. Shared by all
+ * transports using the same client, as they share its connections.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class ClientConnections {
+	/** Maps destinations to the nano time their connection was known to be set up */
+	private final ConcurrentMap<PhysicalAddress, Long> connectedSinceNanos = new ConcurrentHashMap<>();
+
+	/**
+	 * Record a successful exchange with the given destination.
+	 * @param startNanos The nano time the request was started
+	 * @param endNanos The nano time the response arrived
+	 * @return <code>true</code> if the request was started on an already set
+	 *         up connection, so its duration does not include connection
+	 *         setup and TLS handshake
+	 */
+	public boolean onExchange(final PhysicalAddress dest, final long startNanos, final long endNanos) {
+		final Long since = connectedSinceNanos.putIfAbsent(dest, endNanos);
+		return since != null && startNanos - since >= 0;
+	}
+
+	/**
+	 * Record a connection error, so the next exchange is expected to set up
+	 * a new connection.
+	 */
+	public void onConnectionError(final PhysicalAddress dest) {
+		connectedSinceNanos.remove(dest);
+	}
+
+	public int size() {
+		return connectedSinceNanos.size();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the continuations of HTTP requests, i.e. response and error
+ * handling, so they do not run on the I/O threads of the HTTP client.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class CompletionExecutors {
+	/** Run continuations on the thread completing the request */
+	static final String DIRECT = "direct";
+	/** Run continuations on a dedicated thread pool */
+	static final String POOL = "pool";
+	/** Run continuations on virtual threads. Requires Java 21 or later. */
+	static final String VIRTUAL = "virtual";
+
+	/** No instantiation */
+	private CompletionExecutors() {}
+
+	/**
+	 * @return A new executor or <code>null</code> for {@link #DIRECT}
+	 */
+	static ExecutorService newExecutor(final String type, final int threads) {
+		switch (type) {
+		case DIRECT:
+			return null;
+		case POOL:
+			return newPoolExecutor(threads);
+		case VIRTUAL:
+			return newVirtualThreadExecutor();
+		default:
+			throw new IllegalArgumentException("completion_executor must be '" + DIRECT + "', '" + POOL
+					+ "' or '" + VIRTUAL + "'. Given: '" + type + "'");
+		}
+	}
+
+	private static ExecutorService newPoolExecutor(final int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("completion_threads must be > 0. Given: " + threads);
+		}
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r -> {
+			final Thread thread = new Thread(r, "jgroups-http-completion-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Virtual threads are looked up by reflection, as this library still
+	 * runs on Java 8.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		final Method factoryMethod;
+		try {
+			factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (final NoSuchMethodException e) {
+			throw new IllegalArgumentException("completion_executor '" + VIRTUAL + "' requires Java 21 or later");
+		}
+		try {
+			return (ExecutorService) factoryMethod.invoke(null);
+		} catch (final ReflectiveOperationException e) {
+			throw new IllegalStateException("Error creating virtual thread executor", e);
+		}
+	}
+}
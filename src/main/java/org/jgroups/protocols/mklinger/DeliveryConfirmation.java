@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.PhysicalAddress;
+
+/**
+ * Argument of the {@link HTTP#DELIVERY_CONFIRMED} event, passed up the stack
+ * when a request carrying messages was answered with a 2xx status by the
+ * destination.
+ * <p>
+ * A request carries a single message or a bundle of messages, as created by
+ * the bundler of the transport. A confirmation means the destination
+ * transport accepted the data; it does not mean the protocols of the
+ * destination processed the messages. Without bundling, the transport sends
+ * each unicast message with its own request on the thread passing it down,
+ * so the confirmation names the confirmed message.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DeliveryConfirmation {
+	private final Address destination;
+	private final PhysicalAddress physicalDestination;
+	private final Message message;
+	private final int length;
+	private final long durationNanos;
+
+	public DeliveryConfirmation(final Address destination, final PhysicalAddress physicalDestination, final Message message,
+			final int length, final long durationNanos) {
+		this.destination = destination;
+		this.physicalDestination = physicalDestination;
+		this.message = message;
+		this.length = length;
+		this.durationNanos = durationNanos;
+	}
+
+	/**
+	 * @return The logical address of the destination or <code>null</code> if
+	 *         not known anymore
+	 */
+	public Address getDestination() {
+		return destination;
+	}
+
+	public PhysicalAddress getPhysicalDestination() {
+		return physicalDestination;
+	}
+
+	/**
+	 * @return The confirmed message or <code>null</code> if the request carried
+	 *         a bundle of messages or a message sent again by the transport
+	 */
+	public Message getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return The number of bytes confirmed
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The time from sending the request to receiving the response
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "DeliveryConfirmation [destination=" + (destination != null ? destination : physicalDestination)
+				+ ", length=" + length + ", durationNanos=" + durationNanos + "]";
+	}
+}
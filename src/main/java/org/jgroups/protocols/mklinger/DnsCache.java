@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for host name resolution with TTL, negative caching and background
+ * refresh. Lookups are always done by an executor, so callers decide how long
+ * they are willing to wait. Expired entries are still returned while a
+ * refresh runs in the background.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DnsCache {
+	private static final Logger LOG = LoggerFactory.getLogger(DnsCache.class);
+
+	public static final long DEFAULT_TTL_MILLIS = 30_000;
+	public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 10_000;
+	/** Timeout for callers that may wait for a lookup, e.g. when parsing configuration */
+	public static final long DEFAULT_RESOLVE_TIMEOUT_MILLIS = 5_000;
+
+	private static final int MAX_SIZE = 1024;
+	private static final int MAX_RESOLVER_THREADS = 4;
+
+	private static volatile DnsCache defaultCache;
+
+	private final HostResolver resolver;
+	private final Executor executor;
+	private final LongSupplier nanoClock;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+	private volatile long negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * @param resolver The resolver doing the actual, possibly blocking lookups
+	 * @param executor The executor to run lookups
+	 * @param nanoClock The clock used for expiry, e.g. <code>System::nanoTime</code>
+	 */
+	public DnsCache(final HostResolver resolver, final Executor executor, final LongSupplier nanoClock) {
+		this.resolver = Objects.requireNonNull(resolver);
+		this.executor = Objects.requireNonNull(executor);
+		this.nanoClock = Objects.requireNonNull(nanoClock);
+	}
+
+	/**
+	 * Get the JVM-wide cache, using the name service of the JVM.
+	 */
+	public static DnsCache getDefault() {
+		DnsCache cache = defaultCache;
+		if (cache == null) {
+			synchronized (DnsCache.class) {
+				cache = defaultCache;
+				if (cache == null) {
+					cache = new DnsCache(HostResolver.SYSTEM, newDefaultExecutor(), System::nanoTime);
+					defaultCache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Replace the JVM-wide cache, e.g. to use a different resolver.
+	 */
+	public static void setDefault(final DnsCache cache) {
+		defaultCache = Objects.requireNonNull(cache);
+	}
+
+	private static Executor newDefaultExecutor() {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_RESOLVER_THREADS, MAX_RESOLVER_THREADS,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+					final Thread thread = new Thread(r, "jgroups-http-dns-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	public void setTtlMillis(final long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	public long getNegativeTtlMillis() {
+		return negativeTtlMillis;
+	}
+
+	public void setNegativeTtlMillis(final long negativeTtlMillis) {
+		this.negativeTtlMillis = negativeTtlMillis;
+	}
+
+	/**
+	 * Get the cached address for the given host without waiting. If there is
+	 * no fresh entry, a lookup is started in the background.
+	 * @return The cached address, possibly expired, or <code>null</code> if
+	 *         the host was not resolved yet or could not be resolved
+	 */
+	public InetAddress getIfPresent(final String host) {
+		final CompletableFuture<InetAddress> future = resolveAsync(host);
+		if (!future.isDone() || future.isCompletedExceptionally()) {
+			return null;
+		}
+		return future.join();
+	}
+
+	/**
+	 * Resolve the given host, waiting at most the given time.
+	 * @param timeoutMillis Maximum time to wait for a lookup. With 0, this
+	 *        method never waits.
+	 * @throws UnknownHostException If the host could not be resolved or was
+	 *         not resolved in time
+	 */
+	public InetAddress resolve(final String host, final long timeoutMillis) throws UnknownHostException {
+		final CompletableFuture<InetAddress> future = resolveAsync(host);
+		try {
+			if (timeoutMillis <= 0) {
+				final InetAddress address = future.getNow(null);
+				if (address == null) {
+					throw new UnknownHostException(host + ": Lookup pending");
+				}
+				return address;
+			}
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (final CompletionException | ExecutionException e) {
+			throw newUnknownHostException(host, e.getCause());
+		} catch (final TimeoutException e) {
+			throw new UnknownHostException(host + ": Lookup timed out after " + timeoutMillis + " ms");
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException(host + ": Interrupted while waiting for lookup");
+		}
+	}
+
+	private static UnknownHostException newUnknownHostException(final String host, final Throwable cause) {
+		final UnknownHostException e = new UnknownHostException(cause != null ? cause.getMessage() : host);
+		e.initCause(cause);
+		return e;
+	}
+
+	/**
+	 * Resolve the given host asynchronously. The returned future is already
+	 * completed if there is a cached entry. An expired address is returned
+	 * immediately, while the entry is refreshed in the background.
+	 */
+	public CompletableFuture<InetAddress> resolveAsync(final String host) {
+		final Entry entry = getEntry(host);
+		final CompletableFuture<InetAddress> result = entry.result;
+		if (result != null && !entry.isExpired()) {
+			hits.increment();
+			return result;
+		}
+		misses.increment();
+		final CompletableFuture<InetAddress> pending = entry.refresh();
+		if (!pending.isDone() && result != null && !result.isCompletedExceptionally()) {
+			// stale while refreshing
+			return result;
+		}
+		return pending;
+	}
+
+	private Entry getEntry(final String host) {
+		final Entry entry = entries.get(host);
+		if (entry != null) {
+			return entry;
+		}
+		if (entries.size() >= MAX_SIZE) {
+			// Simple bound, like HostAddresses
+			entries.clear();
+		}
+		return entries.computeIfAbsent(host, Entry::new);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getLookups() {
+		return lookups.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "DnsCache[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+		+ ", lookups=" + getLookups() + ", failures=" + getFailures() + "]";
+	}
+
+	private class Entry {
+		private final String host;
+		/** Result of the last completed lookup, null before */
+		private volatile CompletableFuture<InetAddress> result;
+		private volatile long expiresNanos;
+		/** Guarded by this */
+		private CompletableFuture<InetAddress> pending;
+
+		Entry(final String host) {
+			this.host = host;
+		}
+
+		boolean isExpired() {
+			return nanoClock.getAsLong() - expiresNanos >= 0;
+		}
+
+		synchronized CompletableFuture<InetAddress> refresh() {
+			if (pending != null) {
+				return pending;
+			}
+			final CompletableFuture<InetAddress> future = new CompletableFuture<>();
+			pending = future;
+			try {
+				executor.execute(() -> lookup(future));
+			} catch (final RejectedExecutionException e) {
+				complete(future, null, newUnknownHostException(host, e));
+			}
+			// May already be completed, e.g. with a direct executor
+			return future;
+		}
+
+		private void lookup(final CompletableFuture<InetAddress> future) {
+			lookups.increment();
+			try {
+				final InetAddress address = resolver.resolve(host);
+				if (address == null) {
+					throw new UnknownHostException(host);
+				}
+				complete(future, address, null);
+			} catch (final Exception e) {
+				LOG.debug("Lookup for '{}' failed: {}", host, e.toString());
+				failures.increment();
+				complete(future, null, e instanceof UnknownHostException ? e : newUnknownHostException(host, e));
+			}
+		}
+
+		private void complete(final CompletableFuture<InetAddress> future, final InetAddress address, final Exception failure) {
+			// Complete before publishing, so a published result is never pending
+			if (failure == null) {
+				future.complete(address);
+			} else {
+				future.completeExceptionally(failure);
+			}
+			final long ttl = failure == null ? ttlMillis : negativeTtlMillis;
+			synchronized (this) {
+				expiresNanos = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(ttl);
+				result = future;
+				pending = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Header;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.stack.Protocol;
+import org.jgroups.util.MessageBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Failure detection based on the liveness information of the {@link HTTP}
+ * transport. Every successful HTTP exchange with a member counts as a
+ * heartbeat. Heartbeats are only sent to members without any exchange during
+ * the last <code>interval</code> milliseconds. Members without any exchange
+ * during the last <code>timeout</code> milliseconds are suspected. Heartbeats
+ * are internal messages and pass an open circuit breaker of the transport, so
+ * a member is not suspected for failed requests alone.
+ * <p>
+ * The circuit breaker speeds up suspicion: a member whose circuit breaker
+ * stayed open for <code>open_breaker_timeout</code> milliseconds, and without
+ * any exchange during the last <code>interval</code> milliseconds, is
+ * suspected before <code>timeout</code>. VERIFY_SUSPECT then checks the
+ * member as usual.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@MBean(description = "Failure detection based on HTTP transport liveness")
+public class FD_HTTP extends Protocol {
+	private static final Logger LOG = LoggerFactory.getLogger(FD_HTTP.class);
+
+	@Property(description = "Interval in ms at which members are checked and heartbeats are sent to idle members")
+	protected long interval = 3000;
+
+	@Property(description = "Timeout in ms after which a member without successful exchange is suspected")
+	protected long timeout = 9000;
+
+	@Property(description = "Time in ms after which a member whose circuit breaker in the transport is open and "
+			+ "without successful exchange during the last interval is suspected, before timeout. 0 disables.")
+	protected long open_breaker_timeout = 3000;
+
+	private HTTP transport;
+	private Address local_addr;
+	/** Members to monitor, mapped to the nano time monitoring started */
+	private final Map<Address, Long> monitored = new ConcurrentHashMap<>();
+	private final Set<Address> suspected = ConcurrentHashMap.newKeySet();
+	private Future<?> checkTask;
+
+	private final LongAdder heartbeatsSent = new LongAdder();
+	private final LongAdder heartbeatsSuppressed = new LongAdder();
+	private final LongAdder suspectEvents = new LongAdder();
+	private final LongAdder openBreakerSuspects = new LongAdder();
+
+	static {
+		ClassConfigurator.add((short)2002, HeartbeatHeader.class);
+		ClassConfigurator.addProtocol((short)2003, FD_HTTP.class);
+	}
+
+	@Override
+	public void init() throws Exception {
+		super.init();
+		if (interval <= 0 || timeout <= interval) {
+			throw new IllegalArgumentException("interval must be > 0 and timeout must be > interval");
+		}
+		if (open_breaker_timeout < 0) {
+			throw new IllegalArgumentException("open_breaker_timeout must be >= 0");
+		}
+	}
+
+	@Override
+	public void start() throws Exception {
+		super.start();
+		if (!(getTransport() instanceof HTTP)) {
+			throw new IllegalStateException("FD_HTTP requires the HTTP transport");
+		}
+		transport = (HTTP) getTransport();
+		checkTask = transport.getTimer().scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() {
+		if (checkTask != null) {
+			checkTask.cancel(false);
+			checkTask = null;
+		}
+		monitored.clear();
+		suspected.clear();
+		super.stop();
+	}
+
+	@Override
+	public Object down(final Event evt) {
+		switch (evt.getType()) {
+		case Event.SET_LOCAL_ADDRESS:
+			local_addr = evt.getArg();
+			break;
+		case Event.VIEW_CHANGE:
+			handleViewChange(evt.getArg());
+			break;
+		}
+		return down_prot.down(evt);
+	}
+
+	private void handleViewChange(final View view) {
+		final List<Address> members = view.getMembers();
+		monitored.keySet().retainAll(members);
+		suspected.retainAll(members);
+		final long now = System.nanoTime();
+		for (final Address member : members) {
+			if (!member.equals(local_addr)) {
+				monitored.putIfAbsent(member, now);
+			}
+		}
+	}
+
+	@Override
+	public Object up(final Message msg) {
+		if (msg.getHeader(id) != null) {
+			// The transport already recorded the exchange
+			return null;
+		}
+		return up_prot.up(msg);
+	}
+
+	@Override
+	public void up(final MessageBatch batch) {
+		for (final Iterator<Message> it = batch.iterator(); it.hasNext();) {
+			if (it.next().getHeader(id) != null) {
+				it.remove();
+			}
+		}
+		if (!batch.isEmpty()) {
+			up_prot.up(batch);
+		}
+	}
+
+	private void check() {
+		final long now = System.nanoTime();
+		final List<Address> newSuspects = new ArrayList<>();
+		for (final Map.Entry<Address, Long> e : monitored.entrySet()) {
+			final Address member = e.getKey();
+			final long idleMillis = getIdleMillis(member, now, e.getValue());
+			final long millisCircuitOpen = transport.getMillisCircuitOpen(member);
+			if (isSuspect(idleMillis, millisCircuitOpen)) {
+				if (suspected.add(member)) {
+					newSuspects.add(member);
+					if (idleMillis < timeout) {
+						openBreakerSuspects.increment();
+					}
+				}
+			} else {
+				suspected.remove(member);
+			}
+			if (idleMillis >= interval) {
+				sendHeartbeat(member);
+			} else {
+				heartbeatsSuppressed.increment();
+			}
+		}
+		if (!newSuspects.isEmpty()) {
+			LOG.info("{}: Suspecting {}", local_addr, newSuspects);
+			suspectEvents.increment();
+			up_prot.up(new Event(Event.SUSPECT, newSuspects));
+		}
+	}
+
+	/**
+	 * @param idleMillis The time in ms since the last successful exchange
+	 * @param millisCircuitOpen The time in ms the circuit breaker for the
+	 *        member is open, or -1 if closed
+	 */
+	boolean isSuspect(final long idleMillis, final long millisCircuitOpen) {
+		if (idleMillis >= timeout) {
+			return true;
+		}
+		return open_breaker_timeout > 0 && millisCircuitOpen >= open_breaker_timeout && idleMillis >= interval;
+	}
+
+	private long getIdleMillis(final Address member, final long now, final long monitoredSinceNanos) {
+		final long monitoredMillis = TimeUnit.NANOSECONDS.toMillis(now - monitoredSinceNanos);
+		final long sinceLastExchange = transport.getMillisSinceLastExchange(member);
+		if (sinceLastExchange == -1) {
+			return monitoredMillis;
+		}
+		return Math.min(sinceLastExchange, monitoredMillis);
+	}
+
+	private void sendHeartbeat(final Address member) {
+		final Message heartbeat = new Message(member)
+				.setFlag(Message.Flag.INTERNAL, Message.Flag.OOB, Message.Flag.DONT_BUNDLE)
+				.putHeader(id, new HeartbeatHeader());
+		try {
+			down_prot.down(heartbeat);
+			heartbeatsSent.increment();
+		} catch (final Exception e) {
+			LOG.debug("Error sending heartbeat to {}", member, e);
+		}
+	}
+
+	@ManagedAttribute(description = "Number of heartbeats sent")
+	public long getHeartbeatsSent() {
+		return heartbeatsSent.sum();
+	}
+
+	@ManagedAttribute(description = "Number of heartbeats not sent because of recent traffic")
+	public long getHeartbeatsSuppressed() {
+		return heartbeatsSuppressed.sum();
+	}
+
+	@ManagedAttribute(description = "Number of suspect events sent up the stack")
+	public long getSuspectEvents() {
+		return suspectEvents.sum();
+	}
+
+	@ManagedAttribute(description = "Number of members suspected before timeout because of an open circuit breaker")
+	public long getOpenBreakerSuspects() {
+		return openBreakerSuspects.sum();
+	}
+
+	@ManagedOperation(description = "Print the currently suspected members")
+	public String printSuspected() {
+		return suspected.toString();
+	}
+
+	@ManagedOperation(description = "Print the monitored members and their idle times")
+	public String printIdleTimes() {
+		final long now = System.nanoTime();
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<Address, Long> e : monitored.entrySet()) {
+			sb.append(e.getKey()).append(": ").append(getIdleMillis(e.getKey(), now, e.getValue())).append(" ms\n");
+		}
+		return sb.toString();
+	}
+
+	public static class HeartbeatHeader extends Header {
+		public HeartbeatHeader() {
+		}
+
+		@Override
+		public short getMagicId() {
+			return 2002;
+		}
+
+		@Override
+		public Supplier<? extends Header> create() {
+			return HeartbeatHeader::new;
+		}
+
+		@Override
+		public int serializedSize() {
+			return 0;
+		}
+
+		@Override
+		public void writeTo(final DataOutput out) throws Exception {
+		}
+
+		@Override
+		public void readFrom(final DataInput in) throws Exception {
+		}
+
+		@Override
+		public String toString() {
+			return "heartbeat";
+		}
+	}
+}
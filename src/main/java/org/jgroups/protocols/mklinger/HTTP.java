@@ -16,20 +16,50 @@
 package org.jgroups.protocols.mklinger;
 
 import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Message;
 import org.jgroups.PhysicalAddress;
+import org.jgroups.View;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.protocols.FRAG2;
+import org.jgroups.protocols.NoBundler;
 import org.jgroups.protocols.PingData;
 import org.jgroups.protocols.TP;
 import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.ProtocolStack;
 import org.jgroups.util.Responses;
+import org.jgroups.util.Tuple;
 import org.jgroups.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,12 +68,22 @@ import de.mklinger.commons.httpclient.BodyHandlers;
 import de.mklinger.commons.httpclient.BodyProviders;
 import de.mklinger.commons.httpclient.HttpClient;
 import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
 import de.mklinger.jgroups.http.client.ClientConstants;
 import de.mklinger.jgroups.http.client.ClientFactory;
 import de.mklinger.jgroups.http.client.DefaultClientFactory;
 import de.mklinger.jgroups.http.common.Closeables;
+import de.mklinger.jgroups.http.common.DurationStats;
 import de.mklinger.jgroups.http.common.PropertiesString;
+import de.mklinger.jgroups.http.common.StripedExecutor;
+import de.mklinger.jgroups.http.server.AdmissionControl;
+import de.mklinger.jgroups.http.server.ClusterHeader;
 import de.mklinger.jgroups.http.server.HttpReceiver;
+import de.mklinger.jgroups.http.server.ReceiveBuffer;
+import de.mklinger.jgroups.http.server.SenderHeader;
+import de.mklinger.jgroups.http.server.SequenceHeader;
+import de.mklinger.jgroups.http.server.jetty.EmbeddedServer;
+import de.mklinger.jgroups.http.server.jetty.ServerConstants;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de - klingerm
@@ -51,6 +91,25 @@ import de.mklinger.jgroups.http.server.HttpReceiver;
 public class HTTP extends TP implements HttpReceiver {
 	private static final Logger LOG = LoggerFactory.getLogger(HTTP.class);
 
+	private static final long MAX_OVERLOAD_PAUSE_MILLIS = 60000;
+	/** Transport flag of serialized message lists, as written by the bundler */
+	private static final byte TRANSPORT_FLAG_LIST = 1;
+	/** Room for the headers of a fragment in addition to its frag_size */
+	private static final int FRAGMENT_HEADER_ROOM = 16 * 1024;
+
+	/**
+	 * Event passed up the stack with confirm_delivery for each request
+	 * answered with a 2xx status. The argument is a
+	 * {@link DeliveryConfirmation}.
+	 */
+	public static final int DELIVERY_CONFIRMED = Event.USER_DEFINED + 700;
+
+	/**
+	 * The unicast message passed down on the current thread, and the copy of
+	 * its data once sent, so its request can be confirmed with the message.
+	 */
+	private static final ThreadLocal<SendingMessage> SENDING_MESSAGE = new ThreadLocal<>();
+
 	@Property(
 			description = "Http client properties.",
 			systemProperty = "jgroups.http.client_props",
@@ -69,23 +128,369 @@ public class HTTP extends TP implements HttpReceiver {
 			writable = false)
 	protected String external_path = "/jgroups";
 
+	@Property(
+			description = "Start an embedded HTTP/2 server for cluster traffic on bind_addr and bind_port, "
+					+ "instead of relying on JGroupsServlet in a host web application. Requires Jetty http2-server.",
+			systemProperty = "jgroups.http.embedded_server",
+			writable = false)
+	protected boolean embedded_server = false;
+
+	@Property(
+			description = "Embedded HTTP server properties.",
+			systemProperty = "jgroups.http.server_props",
+			writable = false)
+	protected String server_props;
+
+	@Property(
+			description = "Http service scheme. Either 'https' or 'http'. Use 'http' for cleartext HTTP "
+					+ "(h2c with prior knowledge or HTTP/1.1, depending on client and server) on trusted networks "
+					+ "or when a sidecar already provides TLS.",
+			systemProperty = "jgroups.http.scheme",
+			writable = false)
+	protected String scheme = "https";
+
+	@Property(
+			description = "Write the physical address of this node in the compact encoding. Only enable once all "
+					+ "nodes of the cluster can read it. Addresses of other nodes are written in the encoding they "
+					+ "were received in.",
+			systemProperty = "jgroups.http.compact_address_encoding",
+			writable = false)
+	protected boolean compact_address_encoding = false;
+
+	@Property(
+			description = "Open connections to all members of a new view, so the first message "
+					+ "to a new member does not pay for connection setup and TLS handshake.",
+			systemProperty = "jgroups.http.prewarm_connections")
+	protected boolean prewarm_connections = false;
+
+	@Property(
+			description = "Interval in ms for keep-alive requests to peers without other traffic. "
+					+ "Should be lower than the idle timeout of the server and of intermediaries. 0 disables keep-alive.",
+			systemProperty = "jgroups.http.keepalive_interval")
+	protected long keepalive_interval = 0;
+
+	@Property(
+			description = "Time in ms to cache successful host name lookups. Expired entries are refreshed in the "
+					+ "background. If set, this applies to the whole JVM.",
+			systemProperty = "jgroups.http.dns_cache_ttl",
+			writable = false)
+	protected long dns_cache_ttl = DnsCache.DEFAULT_TTL_MILLIS;
+
+	@Property(
+			description = "Time in ms to cache failed host name lookups. If set, this applies to the whole JVM.",
+			systemProperty = "jgroups.http.dns_cache_negative_ttl",
+			writable = false)
+	protected long dns_cache_negative_ttl = DnsCache.DEFAULT_NEGATIVE_TTL_MILLIS;
+
+	@Property(
+			description = "Max number of messages queued per destination while its physical address is being "
+					+ "discovered. 0 disables queueing, so these messages are dropped.",
+			systemProperty = "jgroups.http.max_pending_messages")
+	protected int max_pending_messages = 100;
+
+	@Property(
+			description = "Time in ms after which messages queued for a destination without physical address are dropped.",
+			systemProperty = "jgroups.http.pending_timeout")
+	protected long pending_timeout = 5000;
+
+	@Property(
+			description = "Deliver messages to channels of the same cluster in this JVM directly, "
+					+ "without HTTP client, network and server.",
+			systemProperty = "jgroups.http.local_delivery",
+			writable = false)
+	protected boolean local_delivery = false;
+
+	@Property(
+			description = "Share one HTTP client and its connections with all HTTP transports in this JVM "
+					+ "that use the same client properties. Not used with a custom client factory.",
+			systemProperty = "jgroups.http.shared_client",
+			writable = false)
+	protected boolean shared_client = true;
+
+	@Property(
+			description = "Where to handle responses and errors of sent messages: 'direct' on the thread completing "
+					+ "the request, usually an I/O thread of the HTTP client, 'pool' on a dedicated thread pool "
+					+ "or 'virtual' on virtual threads (Java 21 or later).",
+			systemProperty = "jgroups.http.completion_executor",
+			writable = false)
+	protected String completion_executor = CompletionExecutors.DIRECT;
+
+	@Property(
+			description = "Number of threads for completion_executor 'pool'.",
+			systemProperty = "jgroups.http.completion_threads",
+			writable = false)
+	protected int completion_threads = 2;
+
+	@Property(
+			description = "Block the sending thread until the response to a message is received. Slow receivers "
+					+ "then slow down senders instead of piling up requests. Best combined with senders on virtual "
+					+ "threads, e.g. with bundler_type 'no-bundler'.",
+			systemProperty = "jgroups.http.blocking_send",
+			writable = false)
+	protected boolean blocking_send = false;
+
+	@Property(
+			description = "Max time in ms a sending thread is blocked with blocking_send. The request continues in "
+					+ "the background afterwards, so a hanging destination does not stall sending to other members.",
+			systemProperty = "jgroups.http.blocking_send_timeout")
+	protected long blocking_send_timeout = 2000;
+
+	@Property(
+			description = "Max number of times a message is sent again after a transient failure, like a refused or "
+					+ "reset connection. 0 disables retries.",
+			systemProperty = "jgroups.http.max_send_retries")
+	protected int max_send_retries = 3;
+
+	@Property(
+			description = "Backoff in ms before the first retry. Doubled for each further retry, with random jitter.",
+			systemProperty = "jgroups.http.retry_backoff")
+	protected long retry_backoff = 50;
+
+	@Property(
+			description = "Max backoff in ms before a retry.",
+			systemProperty = "jgroups.http.retry_max_backoff")
+	protected long retry_max_backoff = 2000;
+
+	@Property(
+			description = "Max number of bytes of messages queued for retry per destination. Further failed messages "
+					+ "are dropped and left to retransmission by the reliability protocols.",
+			systemProperty = "jgroups.http.max_retry_bytes")
+	protected long max_retry_bytes = 1024 * 1024;
+
+	@Property(
+			description = "Max number of bytes of messages queued for retry for all destinations together, so the "
+					+ "memory held for retries does not grow with the cluster size.",
+			systemProperty = "jgroups.http.max_retry_bytes_total")
+	protected long max_retry_bytes_total = 16 * 1024 * 1024;
+
+	@Property(
+			description = "Max number of bytes of messages queued per destination while sending to it is paused, "
+					+ "because it rejected messages as overloaded. A single message is queued regardless of its size, "
+					+ "so large messages are sent after the pause. Counts towards max_retry_bytes_total.",
+			systemProperty = "jgroups.http.max_pause_queue")
+	protected long max_pause_queue = 8 * 1024 * 1024;
+
+	@Property(
+			description = "Number of consecutive failed requests to a destination after which its circuit breaker "
+					+ "opens. Messages to destinations with open circuit breaker are dropped right away, except "
+					+ "internal messages. Server errors count as failed requests. "
+					+ "0 disables the circuit breaker.",
+			systemProperty = "jgroups.http.breaker_failure_threshold")
+	protected int breaker_failure_threshold = 5;
+
+	@Property(
+			description = "Time in ms after which a probe is sent to a destination with open circuit breaker. "
+					+ "The circuit breaker closes when the probe succeeds.",
+			systemProperty = "jgroups.http.breaker_open_time")
+	protected long breaker_open_time = 3000;
+
+	@Property(
+			description = "Time in ms to pause sending to a destination that answered with status 503 "
+					+ "(service unavailable) without Retry-After header. Messages to paused destinations are "
+					+ "queued for retry.",
+			systemProperty = "jgroups.http.overload_pause")
+	protected long overload_pause = 1000;
+
+	@Property(
+			description = "Reject received messages with status 503 while all threads of the thread pool are busy "
+					+ "and its queue is full, or while the queue of the receive stripe of the sender is full, so "
+					+ "senders pause instead of adding more work.",
+			systemProperty = "jgroups.http.reject_when_busy")
+	protected boolean reject_when_busy = false;
+
+	@Property(
+			description = "Max number of bytes per second sent to all destinations together. 0 disables the limit. "
+					+ "Change at runtime with setRateLimits().",
+			systemProperty = "jgroups.http.max_send_rate",
+			writable = false)
+	protected long max_send_rate = 0;
+
+	@Property(
+			description = "Max number of requests per second sent to all destinations together. 0 disables the limit. "
+					+ "Change at runtime with setRateLimits().",
+			systemProperty = "jgroups.http.max_send_request_rate",
+			writable = false)
+	protected long max_send_request_rate = 0;
+
+	@Property(
+			description = "Max number of bytes per second sent to a single destination. 0 disables the limit. "
+					+ "Change at runtime with setRateLimits().",
+			systemProperty = "jgroups.http.max_send_rate_per_dest",
+			writable = false)
+	protected long max_send_rate_per_dest = 0;
+
+	@Property(
+			description = "Max number of requests per second sent to a single destination. 0 disables the limit. "
+					+ "Change at runtime with setRateLimits().",
+			systemProperty = "jgroups.http.max_send_request_rate_per_dest",
+			writable = false)
+	protected long max_send_request_rate_per_dest = 0;
+
+	@Property(
+			description = "Messages up to this size in bytes are sent right away, even if a rate limit is exceeded, "
+					+ "so acknowledgements, retransmission requests and heartbeats are not delayed by large messages.",
+			systemProperty = "jgroups.http.rate_limit_priority_size")
+	protected int rate_limit_priority_size = 1024;
+
+	@Property(
+			description = "Max number of bytes of messages queued per destination because of rate limits. Further "
+					+ "messages are dropped and left to retransmission by the reliability protocols.",
+			systemProperty = "jgroups.http.max_rate_limit_queue")
+	protected long max_rate_limit_queue = 8 * 1024 * 1024;
+
+	@Property(
+			description = "Number of threads passing received messages to the protocol stack, in arrival order per "
+					+ "sender and in parallel for different senders. 0 passes messages on the receiving server "
+					+ "thread, where messages of the same sender may overtake each other.",
+			systemProperty = "jgroups.http.receive_stripes",
+			writable = false)
+	protected int receive_stripes = 0;
+
+	@Property(
+			description = "Max number of received messages waiting per receive stripe. Receiving blocks while full.",
+			systemProperty = "jgroups.http.receive_stripe_queue",
+			writable = false)
+	protected int receive_stripe_queue = 1024;
+
+	@Property(
+			description = "Min time in ms to wait for the response to a request. The deadline of a request is the "
+					+ "retransmission timeout calculated from the round trip times to the destination, but at least "
+					+ "this value.",
+			systemProperty = "jgroups.http.request_timeout_min")
+	protected long request_timeout_min = 5000;
+
+	@Property(
+			description = "Max time in ms to wait for the response to a request. Also used while the round trip time "
+					+ "to the destination is unknown. 0 disables request deadlines.",
+			systemProperty = "jgroups.http.request_timeout_max")
+	protected long request_timeout_max = 30000;
+
+	@Property(
+			description = "Messages of at least this size in bytes are large messages. Their requests get "
+					+ "request_timeout_max as deadline, as the deadline from round trip times of small messages does "
+					+ "not cover the transfer time, and their duration is not used as round trip time.",
+			systemProperty = "jgroups.http.large_message_size")
+	protected int large_message_size = 1024 * 1024;
+
+	@Property(
+			description = "Send a transport sequence number with each message, so the receiver passes messages of "
+					+ "this node to the protocol stack in send order, even if concurrent requests overtake each "
+					+ "other. Avoids retransmission requests of the reliability protocols for reordered messages. "
+					+ "Retried messages keep their sequence number.",
+			systemProperty = "jgroups.http.ordered_send")
+	protected boolean ordered_send = false;
+
+	@Property(
+			description = "Max time in ms received messages are held back waiting for a missing predecessor "
+					+ "sent with ordered_send. The missing message is then left to the reliability protocols.",
+			systemProperty = "jgroups.http.reorder_timeout")
+	protected long reorder_timeout = 100;
+
+	@Property(
+			description = "Max number of received messages held back per sender waiting for a missing predecessor.",
+			systemProperty = "jgroups.http.max_reorder_buffer")
+	protected int max_reorder_buffer = 1000;
+
+	@Property(
+			description = "Pass a DELIVERY_CONFIRMED event up the stack for each request answered with a 2xx status "
+					+ "by its destination. The event is passed on the thread completing the request, see "
+					+ "completion_executor, so protocols handling it must not block. With bundler_type "
+					+ "\"no-bundler\", confirmations of unicast messages name the message, see XMIT_FILTER.",
+			systemProperty = "jgroups.http.confirm_delivery")
+	protected boolean confirm_delivery = false;
+
 	private ClientFactory clientFactory;
 
 	private HttpClient client;
 
+	private String sharedClientKey;
+
+	private ClientConnections clientConnections = new ClientConnections();
+
+	private ExecutorService completionExecutor;
+
+	private volatile StripedExecutor receiveExecutor;
+
+	private final ConcurrentMap<PhysicalAddress, Peer> peers = new ConcurrentHashMap<>();
+
+	private final DurationStats prewarmTimes = new DurationStats();
+
+	private Future<?> keepaliveTask;
+
+	private EmbeddedServer embeddedServer;
+
+	private volatile AdmissionControl admissionControl;
+
+	private final PendingMessages pendingMessages = new PendingMessages();
+
+	private final RetryQueue retryQueue = new RetryQueue();
+
+	private final Scheduler scheduler = (task, delayNanos) -> timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+
+	private final RateLimiter rateLimiter = new RateLimiter(this::sendLimited, scheduler);
+
+	private final ReorderBuffer reorderBuffer = new ReorderBuffer(this::receive, scheduler);
+
+	private PhysicalAddress localPhysicalAddress;
+
+	private final LongAdder localDeliveries = new LongAdder();
+
+	private final LongAdder breakerRejected = new LongAdder();
+
+	private final LongAdder requestsTimedOut = new LongAdder();
+
+	private final LongAdder rejectedTooLarge = new LongAdder();
+
+	private volatile Set<PhysicalAddress> physicalMembers = Collections.emptySet();
+
+	private List<Address> viewMembers = Collections.emptyList();
+
+	private final LongAdder purgedRequests = new LongAdder();
+
+	private final LongAdder overloadPauses = new LongAdder();
+
+	private final LongAdder purgedBytes = new LongAdder();
+
 	static {
 		ClassConfigurator.add((short)2000, HostAddress.class);
 	}
 
+	@Override
+	public void init() throws Exception {
+		DnsCache.getDefault().setTtlMillis(dns_cache_ttl);
+		DnsCache.getDefault().setNegativeTtlMillis(dns_cache_negative_ttl);
+		rateLimiter.setRates(max_send_rate, max_send_request_rate, max_send_rate_per_dest, max_send_request_rate_per_dest);
+		super.init();
+	}
+
 	@Override
 	public void start() throws Exception {
+		requireValidScheme();
 		requireValidServicePath();
 
 		try {
 			this.client = newClient();
+			this.completionExecutor = CompletionExecutors.newExecutor(completion_executor, completion_threads);
+			if (completionExecutor != null) {
+				LOG.info("Using completion executor '{}'", completion_executor);
+			}
+			if (receive_stripes > 0) {
+				LOG.info("Using {} receive stripes", receive_stripes);
+				receiveExecutor = new StripedExecutor("jgroups-http-receive", receive_stripes, receive_stripe_queue);
+			}
+			if (embedded_server) {
+				startEmbeddedServer();
+			}
 			super.start();
+			startKeepalive();
+			if (local_delivery) {
+				registerLocalTransport();
+			}
 		} catch (final Exception e) {
 			try {
+				stopEmbeddedServer();
+				stopCompletionExecutor();
+				stopReceiveExecutor();
 				close();
 			} catch (final Exception ex) {
 				e.addSuppressed(ex);
@@ -94,13 +499,55 @@ public class HTTP extends TP implements HttpReceiver {
 		}
 	}
 
-	private HttpClient newClient() {
-		final Properties clientProperties;
-		if (client_props != null && !client_props.isEmpty()) {
-			clientProperties = PropertiesString.fromString(client_props, client_props_sep);
+	private void startEmbeddedServer() throws Exception {
+		final InetSocketAddress bindAddress = bind_addr == null ? new InetSocketAddress(bind_port) : new InetSocketAddress(bind_addr, bind_port);
+		LOG.info("Starting embedded HTTP server on {}", bindAddress);
+		final Properties serverProperties = toProperties(server_props);
+		serverProperties.setProperty(ServerConstants.MAX_CONTENT_SIZE, String.valueOf(ReceiveBuffer.getMaxContentLength(
+				serverProperties.getProperty(ServerConstants.MAX_CONTENT_SIZE), getRequiredMaxContentSize())));
+		embeddedServer = new EmbeddedServer(this, bindAddress, external_path, "https".equals(scheme), serverProperties);
+		embeddedServer.start();
+		admissionControl = embeddedServer.getAdmissionControl();
+	}
+
+	private void stopEmbeddedServer() {
+		if (embeddedServer != null) {
+			try {
+				embeddedServer.close();
+			} catch (final Exception e) {
+				LOG.warn("Error stopping embedded HTTP server", e);
+			} finally {
+				embeddedServer = null;
+			}
+		}
+	}
+
+	private Properties toProperties(final String props) {
+		if (props != null && !props.isEmpty()) {
+			return PropertiesString.fromString(props, client_props_sep);
 		} else {
-			clientProperties = new Properties();
+			return new Properties();
+		}
+	}
+
+	private HttpClient newClient() {
+		if (shared_client && this.clientFactory == null) {
+			LOG.info("Using shared HTTP client");
+			final String key = client_props_sep + "\n" + (client_props == null ? "" : client_props);
+			final HttpClient sharedClient = SharedClients.acquire(key, () -> newClient(toProperties(client_props)));
+			if (sharedClientKey != null) {
+				// restarted without destroy
+				SharedClients.release(sharedClientKey);
+			}
+			sharedClientKey = key;
+			clientConnections = SharedClients.getConnections(key);
+			return sharedClient;
 		}
+		clientConnections = new ClientConnections();
+		return newClient(toProperties(client_props));
+	}
+
+	private HttpClient newClient(final Properties clientProperties) {
 
 		final ClientFactory clientFactory;
 		if (this.clientFactory != null) {
@@ -131,6 +578,15 @@ public class HTTP extends TP implements HttpReceiver {
 		}
 	}
 
+	private void requireValidScheme() {
+		if (!"https".equals(scheme) && !"http".equals(scheme)) {
+			throw new IllegalArgumentException("scheme must be 'https' or 'http'. Given: '" + scheme + "'");
+		}
+		if ("http".equals(scheme)) {
+			LOG.warn("Using cleartext scheme 'http'. Cluster messages are not encrypted by HTTP.");
+		}
+	}
+
 	private void requireValidServicePath() {
 		if (external_path == null) {
 			throw new IllegalArgumentException("external_path is null");
@@ -141,6 +597,57 @@ public class HTTP extends TP implements HttpReceiver {
 		LOG.info("Using external path '{}'", external_path);
 	}
 
+	private void registerLocalTransport() {
+		localPhysicalAddress = getPhysicalAddress();
+		LOG.info("Using local delivery for {}", localPhysicalAddress);
+		LocalTransports.register(localPhysicalAddress, this);
+	}
+
+	private void unregisterLocalTransport() {
+		if (localPhysicalAddress != null) {
+			LocalTransports.unregister(localPhysicalAddress, this);
+			localPhysicalAddress = null;
+		}
+	}
+
+	private void startKeepalive() {
+		if (keepalive_interval > 0) {
+			LOG.info("Using keep-alive interval {} ms", keepalive_interval);
+			keepaliveTask = timer.scheduleWithFixedDelay(this::keepalive, keepalive_interval, keepalive_interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void stop() {
+		unregisterLocalTransport();
+		if (keepaliveTask != null) {
+			keepaliveTask.cancel(false);
+			keepaliveTask = null;
+		}
+		pendingMessages.clear();
+		retryQueue.clear();
+		rateLimiter.clear();
+		reorderBuffer.clear();
+		super.stop();
+		stopEmbeddedServer();
+		stopCompletionExecutor();
+		stopReceiveExecutor();
+	}
+
+	private void stopCompletionExecutor() {
+		if (completionExecutor != null) {
+			completionExecutor.shutdown();
+			completionExecutor = null;
+		}
+	}
+
+	private void stopReceiveExecutor() {
+		if (receiveExecutor != null) {
+			receiveExecutor.close();
+			receiveExecutor = null;
+		}
+	}
+
 	@Override
 	public void destroy() {
 		super.destroy();
@@ -149,9 +656,14 @@ public class HTTP extends TP implements HttpReceiver {
 
 	private void close() {
 		try {
-			Closeables.closeUnchecked(client);
+			if (sharedClientKey != null) {
+				SharedClients.release(sharedClientKey);
+			} else {
+				Closeables.closeUnchecked(client);
+			}
 		} finally {
 			client = null;
+			sharedClientKey = null;
 		}
 	}
 
@@ -167,42 +679,1117 @@ public class HTTP extends TP implements HttpReceiver {
 
 	@Override
 	public void sendUnicast(final PhysicalAddress dest, final byte[] data, final int offset, final int length) throws Exception {
-		send((IpAddress)dest, data, offset, length);
+		if (isCircuitOpen(dest) && !isControlMessage(data, offset, length)) {
+			// Fail fast, before copying
+			breakerRejected.increment();
+			return;
+		}
+		// Must copy data, as we send async and caller re-uses the byte array :-(
+		final byte[] copy = copy(data, offset, length);
+		final SendingMessage sendingMessage = SENDING_MESSAGE.get();
+		if (sendingMessage != null) {
+			sendingMessage.data = copy;
+		}
+		send((IpAddress)dest, copy);
 	}
 
-	private void send(final IpAddress destIpAddress, final byte[] _data, final int offset, final int length) {
-		// Must copy data, as we send async and caller re-uses the byte array :-(
-		final byte[] data = new byte[length];
-		System.arraycopy(_data, offset, data, 0, length);
+	/**
+	 * Holder of the unicast message passed down on the current thread.
+	 */
+	private static class SendingMessage {
+		private final Message message;
+		private byte[] data;
+
+		SendingMessage(final Message message) {
+			this.message = message;
+		}
+	}
+
+	/**
+	 * With confirm_delivery and without bundling, a unicast message is
+	 * serialized and sent on the thread passing it down, so the request
+	 * carrying it can be confirmed with the message.
+	 */
+	@Override
+	public Object down(final Message msg) {
+		if (!confirm_delivery || msg.getDest() == null || !(getBundler() instanceof NoBundler)) {
+			return super.down(msg);
+		}
+		final SendingMessage previous = SENDING_MESSAGE.get();
+		SENDING_MESSAGE.set(new SendingMessage(msg));
+		try {
+			return super.down(msg);
+		} finally {
+			SENDING_MESSAGE.set(previous);
+		}
+	}
+
+	/**
+	 * @return The message sent with the given data on the current thread, or
+	 *         <code>null</code> if not known, e.g. for bundled messages
+	 */
+	private static Message getSendingMessage(final byte[] data) {
+		final SendingMessage sendingMessage = SENDING_MESSAGE.get();
+		return sendingMessage != null && sendingMessage.data == data ? sendingMessage.message : null;
+	}
+
+	private static byte[] copy(final byte[] data, final int offset, final int length) {
+		final byte[] copy = new byte[length];
+		System.arraycopy(data, offset, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Send to a single member. Unlike the implementation in TP, this never
+	 * blocks on discovery: Messages to members without known physical address
+	 * are queued until discovery provides the address.
+	 */
+	@Override
+	protected void sendToSingleMember(final Address dest, final byte[] buf, final int offset, final int length) throws Exception {
+		if (dest instanceof PhysicalAddress) {
+			sendUnicast((PhysicalAddress)dest, buf, offset, length);
+			return;
+		}
+
+		PhysicalAddress physicalDest = getPhysicalAddressFromCache(dest);
+		if (physicalDest != null) {
+			sendUnicast(physicalDest, buf, offset, length);
+			return;
+		}
+
+		if (max_pending_messages <= 0) {
+			super.sendToSingleMember(dest, buf, offset, length);
+			return;
+		}
+
+		LOG.debug("Queueing message to {} until its physical address is known", dest);
+		if (pendingMessages.add(dest, copy(buf, offset, length), max_pending_messages)) {
+			timer.schedule(() -> expirePendingMessages(dest), pending_timeout, TimeUnit.MILLISECONDS);
+			findPhysicalAddressAsync(dest);
+		}
+
+		// The address may have been added while queueing
+		physicalDest = getPhysicalAddressFromCache(dest);
+		if (physicalDest != null) {
+			flushPendingMessages(dest, physicalDest);
+		}
+	}
+
+	/**
+	 * Ask the discovery protocol for the physical address of the given
+	 * member, at most once per who_has_cache_timeout. Responses arrive as
+	 * {@link Event#ADD_PHYSICAL_ADDRESS} events.
+	 */
+	private void findPhysicalAddressAsync(final Address dest) {
+		if (!who_has_cache.addIfAbsentOrExpired(dest)) {
+			return;
+		}
+		timer.execute(() -> {
+			final Responses responses = fetchResponsesFromDiscoveryProtocol(Collections.singletonList(dest));
+			try {
+				for (final PingData data : responses) {
+					if (dest.equals(data.getAddress()) && data.getPhysicalAddr() != null) {
+						flushPendingMessages(dest, data.getPhysicalAddr());
+						return;
+					}
+				}
+			} finally {
+				responses.done();
+			}
+		});
+	}
+
+	private void flushPendingMessages(final Address dest, final PhysicalAddress physicalDest) {
+		final List<byte[]> messages = pendingMessages.flush(dest);
+		if (!messages.isEmpty()) {
+			LOG.debug("Sending {} queued messages to {} at {}", messages.size(), dest, physicalDest);
+			for (final byte[] data : messages) {
+				send((IpAddress)physicalDest, data);
+			}
+		}
+	}
+
+	private void expirePendingMessages(final Address dest) {
+		final PhysicalAddress physicalDest = getPhysicalAddressFromCache(dest);
+		if (physicalDest != null) {
+			flushPendingMessages(dest, physicalDest);
+		} else {
+			final int dropped = pendingMessages.drop(dest);
+			if (dropped > 0) {
+				log.warn(Util.getMessage("PhysicalAddrMissing"), local_addr, dest);
+				LOG.debug("Dropped {} queued messages to {}", dropped, dest);
+			}
+		}
+	}
+
+	/**
+	 * @param data The message, owned by this method
+	 */
+	private void send(final IpAddress destIpAddress, final byte[] data) {
+		send(destIpAddress, data, 0, null);
+	}
+
+	/**
+	 * @param data The message, owned by this method
+	 * @param attempt The number of failed attempts to send the message
+	 * @param sequence The sequence number assigned by an earlier attempt or
+	 *        <code>null</code> if not sent yet
+	 */
+	private void send(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence) {
+		if (localPhysicalAddress != null && deliverLocally(destIpAddress, data)) {
+			return;
+		}
+
+		if (!isSendable(destIpAddress, data, attempt, sequence)) {
+			return;
+		}
+
+		if (rateLimiter.isEnabled()) {
+			rateLimiter.submit(destIpAddress, data, attempt, sequence, rate_limit_priority_size, max_rate_limit_queue);
+		} else {
+			sendRequest(destIpAddress, data, attempt, sequence, blocking_send);
+		}
+	}
+
+	/**
+	 * Check the destination before sending: Messages to a destination with
+	 * open circuit breaker are dropped and messages to a paused destination
+	 * are queued until the pause is over.
+	 * @return <code>true</code> if the message can be sent now
+	 */
+	private boolean isSendable(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence) {
+		if (isCircuitOpen(destIpAddress) && !isControlMessage(data, 0, data.length)) {
+			breakerRejected.increment();
+			return false;
+		}
+
+		final long pauseMillis = peer(destIpAddress).getRemainingPauseMillis();
+		if (pauseMillis > 0) {
+			queueForRetry(destIpAddress, data, attempt, sequence, pauseMillis, max_pause_queue);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Send a message passed by the rate limiter. Messages the rate limiter
+	 * delayed are checked again, as the circuit breaker may have opened or
+	 * sending may have been paused in the meantime. They are never waited
+	 * for with blocking_send, as their sender did not wait for them either
+	 * and the rate limiter must not be blocked by a round trip.
+	 * @param delayed <code>true</code> if the message was queued by the rate limiter
+	 */
+	private void sendLimited(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence,
+			final boolean delayed) {
+		if (!delayed) {
+			sendRequest(destIpAddress, data, attempt, sequence, blocking_send);
+		} else if (isSendable(destIpAddress, data, attempt, sequence)) {
+			sendRequest(destIpAddress, data, attempt, sequence, false);
+		}
+	}
 
+	/**
+	 * Send a message with an HTTP request.
+	 * @param data The message, owned by this method
+	 * @param attempt The number of failed attempts to send the message
+	 * @param sequence The sequence number assigned by an earlier attempt or
+	 *        <code>null</code> to assign the next one
+	 * @param blocking <code>true</code> to wait for the response, see blocking_send
+	 */
+	private void sendRequest(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence,
+			final boolean blocking) {
 		LOG.debug("Sending message to {}...", destIpAddress);
 
-		final HttpRequest request = HttpRequest.newBuilder(getServiceUrl(destIpAddress))
-				.header("X-Sender", getLocalPhysicalAddress())
-				.POST(BodyProviders.fromByteArray("application/x-jgroups-message", data))
-				.build();
+		final Peer peer = peer(destIpAddress);
+		final long timeoutMillis = data.length >= large_message_size
+				? Math.max(0, request_timeout_max)
+				: getRequestTimeoutMillis(peer);
+		final HttpRequest.Builder builder = newRequestBuilder(peer, timeoutMillis)
+				.POST(BodyProviders.fromByteArray("application/x-jgroups-message", data));
+		final SequenceHeader requestSequence = getSequence(peer, sequence);
+		if (requestSequence != null) {
+			builder.header(SequenceHeader.NAME, requestSequence.toString());
+		}
+		final HttpRequest request = builder.build();
+		final Message message = confirm_delivery ? getSendingMessage(data) : null;
+
+		final long startNanos = System.nanoTime();
+		final CompletableFuture<HttpResponse<Void>> responseFuture = client.sendAsync(request, BodyHandlers.discard());
+		peer.addInFlight(responseFuture);
+		final CompletableFuture<HttpResponse<Void>> completion;
+		if (completionExecutor == null) {
+			completion = responseFuture.whenComplete((response, failure) -> {
+				final long durationNanos = System.nanoTime() - startNanos;
+				peer.removeInFlight(responseFuture);
+				onSendComplete(peer, data, message, attempt, requestSequence, startNanos, durationNanos, response, failure);
+			});
+		} else {
+			completion = responseFuture.whenCompleteAsync((response, failure) -> {
+				final long durationNanos = System.nanoTime() - startNanos;
+				peer.removeInFlight(responseFuture);
+				onSendComplete(peer, data, message, attempt, requestSequence, startNanos, durationNanos, response, failure);
+			}, completionExecutor);
+		}
+
+		if (blocking) {
+			awaitSendComplete(destIpAddress, completion, timeoutMillis);
+		}
+	}
+
+	/**
+	 * With ordered_send, a message keeps the sequence number of its first
+	 * attempt when sent again, so the receiver does not wait for a number
+	 * that was never delivered. A number of an earlier epoch of the peer is
+	 * dropped, as the receiver already moved on to the current epoch.
+	 * @return The sequence number to send or <code>null</code> for none
+	 */
+	private SequenceHeader getSequence(final Peer peer, final SequenceHeader sequence) {
+		if (!ordered_send) {
+			return null;
+		}
+		if (sequence == null) {
+			return new SequenceHeader(peer.getEpoch(), peer.nextSendSeq());
+		}
+		return sequence.getEpoch() == peer.getEpoch() ? sequence : null;
+	}
 
-		client.sendAsync(request, BodyHandlers.discard())
-		.thenAccept(response -> LOG.debug("Send to {}: Complete: {}", destIpAddress, response.statusCode()))
-		.exceptionally(failure -> {
-			// TODO why CompletionException here?
-			Throwable ex = failure;
-			if (ex instanceof CompletionException) {
-				ex = ex.getCause();
+	/**
+	 * Handle the response to a message. The peer is the one the request was
+	 * sent with, so a peer purged in the meantime is not created again.
+	 */
+	private void onSendComplete(final Peer peer, final byte[] data, final Message message, final int attempt, final SequenceHeader sequence,
+			final long startNanos, final long durationNanos, final HttpResponse<Void> response, final Throwable failure) {
+		final IpAddress destIpAddress = (IpAddress)peer.getAddress();
+		if (failure == null) {
+			LOG.debug("Send to {}: Complete: {}", destIpAddress, response.statusCode());
+			if (response.statusCode() != 503) {
+				// Overload is handled by pausing, not by the circuit breaker
+				recordBreakerResponse(peer, response.statusCode());
 			}
-			if (ex instanceof ConnectException || ex instanceof SocketTimeoutException) {
-				LOG.info("Send to {}: Failed: {}", destIpAddress, ex.toString());
-			} else {
-				LOG.warn("Send to {}: Failed:", destIpAddress, ex);
+			if (isSuccess(response.statusCode())) {
+				peer.touch();
+				if (clientConnections.onExchange(destIpAddress, startNanos, startNanos + durationNanos)
+						&& data.length < large_message_size) {
+					peer.addRtt(durationNanos);
+				}
+				if (confirm_delivery) {
+					confirmDelivery(destIpAddress, message, data.length, durationNanos);
+				}
+			} else if (response.statusCode() == 503) {
+				onOverloaded(peer, data, attempt, sequence, response);
+			} else if (response.statusCode() == 413) {
+				// Rejected message, the destination itself is fine
+				LOG.warn("Send to {}: Message of {} bytes rejected as too large, check the receive limits of the "
+						+ "destination and frag_size", destIpAddress, data.length);
+				rejectedTooLarge.increment();
+			}
+			return;
+		}
+		if (failure instanceof CancellationException) {
+			LOG.debug("Send to {}: Cancelled", destIpAddress);
+			return;
+		}
+		if (isTimedOut(failure)) {
+			requestsTimedOut.increment();
+		}
+		// Failures of dependent stages are wrapped
+		Throwable ex = failure;
+		if (ex instanceof CompletionException) {
+			ex = ex.getCause();
+		}
+		if (ex instanceof ConnectException || ex instanceof SocketTimeoutException) {
+			LOG.info("Send to {}: Failed: {}", destIpAddress, ex.toString());
+		} else {
+			LOG.warn("Send to {}: Failed:", destIpAddress, ex);
+		}
+		recordBreakerFailure(peer);
+		if (isTransientFailure(ex)) {
+			clientConnections.onConnectionError(destIpAddress);
+		}
+		if (isTransientFailure(ex) && !peer.getCircuitBreaker().isOpen()) {
+			retry(destIpAddress, data, attempt + 1, sequence);
+		}
+	}
+
+	private void confirmDelivery(final IpAddress destIpAddress, final Message message, final int length, final long durationNanos) {
+		final Address destination = message != null ? message.getDest() : logical_addr_cache.getByValue(destIpAddress);
+		try {
+			up_prot.up(new Event(DELIVERY_CONFIRMED, new DeliveryConfirmation(destination, destIpAddress, message, length, durationNanos)));
+		} catch (final Exception e) {
+			LOG.warn("Error passing delivery confirmation for {} up the stack", destIpAddress, e);
+		}
+	}
+
+	/**
+	 * A destination with open circuit breaker failed repeatedly, so messages
+	 * to it are dropped right away instead of waiting for a timeout.
+	 * @param member The logical or physical address of the member
+	 * @return <code>true</code> if the circuit breaker for the member is open
+	 */
+	public boolean isCircuitOpen(final Address member) {
+		final Peer peer = getPeer(member);
+		return peer != null && peer.getCircuitBreaker().isOpen();
+	}
+
+	/**
+	 * @return The time in ms the circuit breaker for the member is open, or -1
+	 *         if closed or unknown
+	 */
+	public long getMillisCircuitOpen(final Address member) {
+		final Peer peer = getPeer(member);
+		if (peer == null) {
+			return -1;
+		}
+		return peer.getCircuitBreaker().getMillisOpen(System.nanoTime());
+	}
+
+	/**
+	 * Control messages like heartbeats and suspicion checks are sent even if
+	 * the circuit breaker of the destination is open, so failure detection
+	 * can still tell a live member from a dead one. Application messages,
+	 * including out-of-band ones, fail fast. Only single messages are
+	 * inspected, bundled messages count as regular messages.
+	 */
+	static boolean isControlMessage(final byte[] data, final int offset, final int length) {
+		// Version (short), transport flags (byte), leading byte, message flags (short)
+		if (length < 6 || (data[offset + 2] & TRANSPORT_FLAG_LIST) != 0) {
+			return false;
+		}
+		final int flags = ((data[offset + 4] & 0xff) << 8) | (data[offset + 5] & 0xff);
+		return (flags & Message.Flag.INTERNAL.value()) != 0;
+	}
+
+	/**
+	 * Any response other than a server error proves that the destination is
+	 * reachable and processes requests. This includes status 413, which
+	 * rejects a single message that is too large, not the destination.
+	 */
+	private void recordBreakerResponse(final Peer peer, final int statusCode) {
+		if (statusCode >= 500) {
+			recordBreakerFailure(peer);
+		} else if (peer.getCircuitBreaker().onSuccess()) {
+			LOG.info("Circuit breaker for {} closed", peer.getAddress());
+		}
+	}
+
+	private void recordBreakerFailure(final Peer peer) {
+		if (breaker_failure_threshold <= 0) {
+			return;
+		}
+		final IpAddress destIpAddress = (IpAddress)peer.getAddress();
+		if (peer.getCircuitBreaker().onFailure(breaker_failure_threshold)) {
+			LOG.info("Circuit breaker for {} open, dropping messages until a probe succeeds", destIpAddress);
+			retryQueue.drop(destIpAddress);
+			timer.schedule(() -> probeCircuitBreaker(destIpAddress), breaker_open_time, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void probeCircuitBreaker(final IpAddress destIpAddress) {
+		final Peer peer = peers.get(destIpAddress);
+		if (peer == null) {
+			return;
+		}
+		if (!physicalMembers.contains(destIpAddress)) {
+			// Not a member (yet), let messages pass as without circuit breaker
+			peer.getCircuitBreaker().onSuccess();
+			return;
+		}
+		if (peer.getCircuitBreaker().startProbe()) {
+			LOG.debug("Probing {} with open circuit breaker", destIpAddress);
+			sendProbe(destIpAddress);
+		}
+	}
+
+	/**
+	 * Transient failures are failures where the message was not processed by
+	 * the receiver, so sending it again is safe and may succeed.
+	 */
+	private static boolean isTransientFailure(final Throwable ex) {
+		return ex instanceof SocketException || ex instanceof ClosedChannelException;
+	}
+
+	/**
+	 * The destination rejected the message because it is overloaded, so
+	 * pause sending to it for the time it asked for and send the message
+	 * again afterwards.
+	 */
+	private void onOverloaded(final Peer peer, final byte[] data, final int attempt, final SequenceHeader sequence,
+			final HttpResponse<Void> response) {
+		final IpAddress destIpAddress = (IpAddress)peer.getAddress();
+		final long pauseMillis = getRetryAfterMillis(response);
+		LOG.debug("Send to {}: Destination overloaded, pausing for {} ms", destIpAddress, pauseMillis);
+		peer.pause(pauseMillis);
+		overloadPauses.increment();
+		// Rejected before processing, so this is not a failed attempt
+		queueForRetry(destIpAddress, data, attempt, sequence, pauseMillis, max_pause_queue);
+	}
+
+	private long getRetryAfterMillis(final HttpResponse<Void> response) {
+		final String retryAfter = response.headers().firstValue(AdmissionControl.RETRY_AFTER_HEADER).orElse(null);
+		if (retryAfter != null) {
+			try {
+				final long seconds = Long.parseLong(retryAfter.trim());
+				return Math.max(0, Math.min(MAX_OVERLOAD_PAUSE_MILLIS, TimeUnit.SECONDS.toMillis(seconds)));
+			} catch (final NumberFormatException e) {
+				// HTTP date, not used by JGroupsServlet
+			}
+		}
+		return overload_pause;
+	}
+
+	/**
+	 * Queue a message to be sent again after a backoff. Messages for a
+	 * destination are queued together and sent again in order, with the
+	 * sequence number of their first attempt.
+	 * @param attempt The number of failed attempts to send the message
+	 */
+	private void retry(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence) {
+		if (attempt > max_send_retries) {
+			if (max_send_retries > 0) {
+				LOG.debug("Send to {}: Giving up after {} attempts", destIpAddress, attempt);
+				retryQueue.dropped();
+			}
+			return;
+		}
+		queueForRetry(destIpAddress, data, attempt, sequence,
+				RetryQueue.backoffMillis(attempt, retry_backoff, retry_max_backoff), max_retry_bytes);
+	}
+
+	/**
+	 * @param maxBytes The max number of bytes queued for the destination, see
+	 *        {@link RetryQueue#add(PhysicalAddress, byte[], int, SequenceHeader, long, long)}
+	 */
+	private void queueForRetry(final IpAddress destIpAddress, final byte[] data, final int attempt, final SequenceHeader sequence,
+			final long delayMillis, final long maxBytes) {
+		if (retryQueue.add(destIpAddress, data, attempt, sequence, maxBytes, max_retry_bytes_total)) {
+			LOG.debug("Send to {}: Retrying in {} ms", destIpAddress, delayMillis);
+			timer.schedule(() -> sendRetries(destIpAddress), delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void sendRetries(final IpAddress destIpAddress) {
+		final List<RetryQueue.Retry> retries = retryQueue.flush(destIpAddress);
+		if (!peers.containsKey(destIpAddress)) {
+			// Queued by a response arriving after the destination was purged
+			for (final RetryQueue.Retry retry : retries) {
+				purgedBytes.add(retry.getData().length);
+			}
+			return;
+		}
+		for (final RetryQueue.Retry retry : retries) {
+			send(destIpAddress, retry.getData(), retry.getAttempt(), retry.getSequence());
+		}
+	}
+
+	/**
+	 * Get the deadline for requests to the given destination: The
+	 * retransmission timeout calculated from the round trip times like TCP
+	 * does (RFC 6298), limited by request_timeout_min and request_timeout_max.
+	 * @return The timeout in milliseconds or 0 for no timeout
+	 */
+	private long getRequestTimeoutMillis(final Peer peer) {
+		if (request_timeout_max <= 0) {
+			return 0;
+		}
+		final long rtoNanos = peer.getRetransmissionTimeoutNanos();
+		if (rtoNanos == -1) {
+			return request_timeout_max;
+		}
+		final long rtoMillis = TimeUnit.NANOSECONDS.toMillis(rtoNanos);
+		return Math.max(request_timeout_min, Math.min(request_timeout_max, rtoMillis));
+	}
+
+	/**
+	 * Get the current deadline for requests to the given member.
+	 * @param member The logical or physical address of the member
+	 * @return The timeout in milliseconds, 0 for no timeout or -1 if the
+	 *         member is unknown
+	 */
+	public long getRequestTimeoutMillis(final Address member) {
+		final Peer peer = getPeer(member);
+		if (peer == null) {
+			return -1;
+		}
+		return getRequestTimeoutMillis(peer);
+	}
+
+	/**
+	 * The client fails requests exceeding their deadline with a timeout
+	 * exception, possibly wrapped.
+	 */
+	private static boolean isTimedOut(final Throwable failure) {
+		for (Throwable ex = failure; ex != null; ex = ex.getCause()) {
+			if (ex instanceof TimeoutException || ex instanceof SocketTimeoutException) {
+				return true;
+			}
+			if (ex.getCause() == ex) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wait until the response is handled, at most for the request deadline
+	 * and blocking_send_timeout. Failures are already handled by
+	 * {@link #onSendComplete(Peer, byte[], Message, int, SequenceHeader, long, long, HttpResponse, Throwable)}.
+	 */
+	private void awaitSendComplete(final IpAddress destIpAddress, final CompletableFuture<?> completion, final long timeoutMillis) {
+		final long waitMillis = timeoutMillis > 0 ? Math.min(timeoutMillis, blocking_send_timeout) : blocking_send_timeout;
+		try {
+			completion.get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final TimeoutException e) {
+			LOG.debug("Send to {}: No response after {} ms, continuing in the background", destIpAddress, waitMillis);
+		} catch (ExecutionException | CancellationException e) {
+			// already handled
+		}
+	}
+
+	/**
+	 * Deliver a message to a channel of the same cluster in this JVM, if
+	 * there is one for the destination. The receiving transport processes the
+	 * message on its own thread pool, so the sender never runs the receiver's
+	 * protocol stack.
+	 * @param data The message, owned by this method
+	 * @return <code>true</code> if the message was handed over,
+	 *         <code>false</code> if it must be sent over HTTP
+	 */
+	private boolean deliverLocally(final IpAddress destIpAddress, final byte[] data) {
+		final HTTP target = LocalTransports.get(destIpAddress, getClusterName());
+		if (target == null) {
+			return false;
+		}
+		final PhysicalAddress sender = localPhysicalAddress;
+		try {
+			target.getThreadPool().execute(() -> target.receive(sender, data, 0, data.length));
+		} catch (final RejectedExecutionException e) {
+			LOG.debug("Local delivery to {} rejected, sending over HTTP", destIpAddress);
+			return false;
+		}
+		LOG.debug("Delivered message to {} locally", destIpAddress);
+		localDeliveries.increment();
+		peer(destIpAddress).touch();
+		return true;
+	}
+
+	/**
+	 * Create a request builder with the headers identifying this node and its
+	 * cluster, so the receiving servlet can route the request to the channel
+	 * of the same cluster.
+	 * @param timeoutMillis The deadline for the response or 0 for no deadline
+	 */
+	private HttpRequest.Builder newRequestBuilder(final Peer peer, final long timeoutMillis) {
+		final HttpRequest.Builder builder = HttpRequest.newBuilder(getServiceUrl(peer))
+				.header(SenderHeader.NAME, getLocalPhysicalAddress());
+		if (timeoutMillis > 0) {
+			// The client resets the stream when the deadline is exceeded
+			builder.timeout(Duration.ofMillis(timeoutMillis));
+		}
+		final String clusterName = getClusterName();
+		if (clusterName != null) {
+			builder.header(ClusterHeader.NAME, clusterName);
+		}
+		return builder;
+	}
+
+	private static boolean isSuccess(final int statusCode) {
+		return statusCode >= 200 && statusCode < 300;
+	}
+
+	/**
+	 * With reject_when_busy, the receiver is overloaded while all threads of
+	 * the thread pool are busy and its queue is full, or while the queue of the
+	 * receive stripe of the sender is full, as receiving would block the server
+	 * thread. Senders on other stripes are still admitted.
+	 */
+	@Override
+	public boolean isOverloaded(final Address sender) {
+		if (!reject_when_busy) {
+			return false;
+		}
+		final StripedExecutor executor = receiveExecutor;
+		if (executor != null && executor.isSaturated(sender)) {
+			return true;
+		}
+		if (!(getThreadPool() instanceof ThreadPoolExecutor)) {
+			return false;
+		}
+		final ThreadPoolExecutor threadPool = (ThreadPoolExecutor) getThreadPool();
+		return threadPool.getActiveCount() >= threadPool.getMaximumPoolSize()
+				&& threadPool.getQueue().remainingCapacity() == 0;
+	}
+
+	/**
+	 * With receive_stripes, messages are passed to the protocol stack on the
+	 * stripe of the sender, so messages of the same sender keep their arrival
+	 * order. The caller must not modify the data afterwards.
+	 */
+	@Override
+	public void receive(final Address sender, final byte[] data, final int offset, final int length) {
+		if (sender instanceof PhysicalAddress) {
+			final Peer peer = memberPeer((PhysicalAddress)sender);
+			if (peer != null) {
+				peer.touch();
 			}
-			// TODO trigger SUSPECT here?
+		}
+		final StripedExecutor executor = receiveExecutor;
+		if (executor != null) {
+			executor.execute(sender, () -> super.receive(sender, data, offset, length));
+		} else {
+			super.receive(sender, data, offset, length);
+		}
+	}
+
+	/**
+	 * Messages sent with ordered_send pass the reorder buffer of their
+	 * sender, which holds back messages until their predecessors arrived.
+	 */
+	@Override
+	public void receive(final Address sender, final SequenceHeader sequence, final byte[] data, final int offset, final int length) {
+		if (sequence == null) {
+			receive(sender, data, offset, length);
+		} else {
+			reorderBuffer.receive(sender, sequence, data, offset, length,
+					TimeUnit.MILLISECONDS.toNanos(reorder_timeout), max_reorder_buffer);
+		}
+	}
+
+	private Peer peer(final PhysicalAddress address) {
+		return peers.computeIfAbsent(address, Peer::new);
+	}
+
+	/**
+	 * Get the peer for the given address, creating it only for members of the
+	 * current view, so a late message from a member that left does not
+	 * recreate its purged peer.
+	 * @return The peer or <code>null</code> if none
+	 */
+	private Peer memberPeer(final PhysicalAddress address) {
+		if (physicalMembers.contains(address)) {
+			return peer(address);
+		}
+		return peers.get(address);
+	}
+
+	/**
+	 * Get the time since the last successful exchange with the given member.
+	 * A successful exchange is a 2xx response to a request sent to the member
+	 * or a message received from the member.
+	 * @param member The logical or physical address of the member
+	 * @return Milliseconds since the last successful exchange or -1 if unknown
+	 */
+	public long getMillisSinceLastExchange(final Address member) {
+		final Peer peer = getPeer(member);
+		if (peer == null) {
+			return -1;
+		}
+		return peer.millisSinceLastExchange();
+	}
+
+	private Peer getPeer(final Address member) {
+		final PhysicalAddress physicalAddress;
+		if (member instanceof PhysicalAddress) {
+			physicalAddress = (PhysicalAddress)member;
+		} else {
+			physicalAddress = getPhysicalAddressFromCache(member);
+		}
+		if (physicalAddress == null) {
 			return null;
-		});
+		}
+		return peers.get(physicalAddress);
+	}
+
+	@ManagedOperation(description = "Print the time since the last successful exchange for all known peers")
+	public String printLastExchanges() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Peer peer : peers.values()) {
+			sb.append(peer).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public Object down(final Event evt) {
+		final Object retval = super.down(evt);
+		switch (evt.getType()) {
+		case Event.VIEW_CHANGE:
+			handleViewChange(evt.getArg());
+			break;
+		case Event.ADD_PHYSICAL_ADDRESS:
+			final Tuple<Address, PhysicalAddress> tuple = evt.getArg();
+			if (tuple.getVal2() != null) {
+				flushPendingMessages(tuple.getVal1(), tuple.getVal2());
+			}
+			break;
+		}
+		return retval;
+	}
+
+	private void handleViewChange(final View view) {
+		final Set<PhysicalAddress> physicalMembers = new HashSet<>();
+		for (final Address member : view.getMembersRaw()) {
+			final PhysicalAddress physicalAddress = getPhysicalAddressFromCache(member);
+			if (physicalAddress != null) {
+				physicalMembers.add(physicalAddress);
+			}
+		}
+		// Set first, so peers of left members are not created again meanwhile
+		this.physicalMembers = physicalMembers;
+		purgeLeftMembers(view, physicalMembers);
+		peers.keySet().retainAll(physicalMembers);
+
+		if (prewarm_connections) {
+			prewarm(physicalMembers);
+		}
+	}
+
+	/**
+	 * Release everything held for members that left the view: Requests
+	 * without response are cancelled and messages queued for retry or for
+	 * discovery are dropped.
+	 */
+	private void purgeLeftMembers(final View view, final Set<PhysicalAddress> physicalMembers) {
+		final List<Address> leftMembers = new ArrayList<>(viewMembers);
+		leftMembers.removeAll(view.getMembers());
+		viewMembers = view.getMembers();
+
+		for (final Address member : leftMembers) {
+			long bytes = pendingMessages.purge(member);
+			final PhysicalAddress physicalAddress = getPhysicalAddressFromCache(member);
+			if (physicalAddress != null && !physicalMembers.contains(physicalAddress)) {
+				bytes += retryQueue.purge(physicalAddress);
+				bytes += rateLimiter.purge(physicalAddress);
+				reorderBuffer.remove(physicalAddress);
+				final Peer peer = peers.remove(physicalAddress);
+				if (peer != null) {
+					peer.cancelInFlight(purgedRequests);
+				}
+			}
+			purgedBytes.add(bytes);
+			LOG.debug("Purged requests and messages to {}, which left the view", member);
+		}
+	}
+
+	private void prewarm(final Set<PhysicalAddress> physicalMembers) {
+		final PhysicalAddress localPhysicalAddress = getPhysicalAddress();
+		for (final PhysicalAddress physicalMember : physicalMembers) {
+			if (!physicalMember.equals(localPhysicalAddress) && peer(physicalMember).startWarmup()) {
+				LOG.debug("Pre-warming connection to {}", physicalMember);
+				sendProbe((IpAddress)physicalMember).thenAccept(durationNanos -> {
+					if (durationNanos != null) {
+						prewarmTimes.add(durationNanos);
+					}
+				});
+			}
+		}
+	}
+
+	private void keepalive() {
+		final PhysicalAddress localPhysicalAddress = getPhysicalAddress();
+		for (final Peer peer : peers.values()) {
+			final long idleMillis = peer.millisSinceLastExchange();
+			if ((idleMillis == -1 || idleMillis >= keepalive_interval) && !peer.getAddress().equals(localPhysicalAddress)) {
+				LOG.debug("Sending keep-alive to {}", peer.getAddress());
+				sendProbe((IpAddress)peer.getAddress());
+			}
+		}
+	}
+
+	/**
+	 * Send a cheap request without message to the given destination. The
+	 * round trip time is recorded for the peer.
+	 * @return A future completing with the round trip time in nanoseconds or
+	 *         with <code>null</code> if the probe failed
+	 */
+	private CompletableFuture<Long> sendProbe(final IpAddress destIpAddress) {
+		// Do not recreate a peer purged in the meantime
+		final Peer peer = peers.get(destIpAddress);
+		if (peer == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final HttpRequest request = newRequestBuilder(peer, getRequestTimeoutMillis(peer))
+				.GET()
+				.build();
+
+		final long startNanos = System.nanoTime();
+		return client.sendAsync(request, BodyHandlers.discard())
+				.thenApply(response -> {
+					LOG.debug("Probe to {}: Complete: {}", destIpAddress, response.statusCode());
+					recordBreakerResponse(peer, response.statusCode());
+					if (!isSuccess(response.statusCode())) {
+						return null;
+					}
+					final long durationNanos = System.nanoTime() - startNanos;
+					peer.touch();
+					if (clientConnections.onExchange(destIpAddress, startNanos, startNanos + durationNanos)) {
+						peer.addRtt(durationNanos);
+					}
+					return durationNanos;
+				})
+				.exceptionally(failure -> {
+					LOG.debug("Probe to {}: Failed: {}", destIpAddress, failure.toString());
+					if (isTimedOut(failure)) {
+						requestsTimedOut.increment();
+					}
+					recordBreakerFailure(peer);
+					if (isTransientFailure(failure instanceof CompletionException ? failure.getCause() : failure)) {
+						clientConnections.onConnectionError(destIpAddress);
+					}
+					return null;
+				});
+	}
+
+	/**
+	 * Get the smoothed round trip time to the given member, as measured by
+	 * messages and keep-alive requests. Exchanges that set up a connection,
+	 * usually the pre-warm request, are not measured, see
+	 * {@link ClientConnections}.
+	 * @param member The logical or physical address of the member
+	 * @return The round trip time in milliseconds or -1 if unknown
+	 */
+	public double getRttMillis(final Address member) {
+		final Peer peer = getPeer(member);
+		if (peer == null || peer.getSmoothedRttNanos() == -1) {
+			return -1;
+		}
+		return ((double) peer.getSmoothedRttNanos()) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@ManagedOperation(description = "Print the round trip times measured for all known peers")
+	public String printRtts() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Peer peer : peers.values()) {
+			sb.append(peer.printRtt()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@ManagedOperation(description = "Print statistics of the DNS cache")
+	public String printDnsCache() {
+		return DnsCache.getDefault().toString();
+	}
+
+	@ManagedAttribute(description = "Number of messages currently queued for destinations without physical address")
+	public int getPendingMessages() {
+		return pendingMessages.getMessageCount();
+	}
+
+	@ManagedAttribute(description = "Number of queued messages sent after discovery provided the physical address")
+	public long getPendingMessagesFlushed() {
+		return pendingMessages.getFlushed();
+	}
+
+	@ManagedAttribute(description = "Number of messages dropped because the queue was full or discovery timed out")
+	public long getPendingMessagesDropped() {
+		return pendingMessages.getDropped();
+	}
+
+	@ManagedOperation(description = "Print the destinations without physical address and their queued messages")
+	public String printPendingMessages() {
+		return pendingMessages.toString();
+	}
+
+	@ManagedAttribute(description = "Number of bytes of messages currently queued for retry")
+	public long getRetryQueueBytes() {
+		return retryQueue.getBytes();
+	}
+
+	@ManagedAttribute(description = "Number of messages queued for retry after a transient send failure")
+	public long getRetriesQueued() {
+		return retryQueue.getQueued();
+	}
+
+	@ManagedAttribute(description = "Number of messages sent again after a transient send failure")
+	public long getRetriesSent() {
+		return retryQueue.getRetried();
+	}
+
+	@ManagedAttribute(description = "Number of messages not retried because the retry queue was full or "
+			+ "all retries failed")
+	public long getRetriesDropped() {
+		return retryQueue.getDropped();
+	}
+
+	@ManagedOperation(description = "Print the destinations with messages queued for retry")
+	public String printRetryQueues() {
+		return retryQueue.toString();
+	}
+
+	@ManagedOperation(description = "Set the rate limits for sending in bytes and requests per second, "
+			+ "for all destinations together and per destination. 0 disables a limit.")
+	public void setRateLimits(final long bytesPerSecond, final long requestsPerSecond,
+			final long bytesPerSecondPerDest, final long requestsPerSecondPerDest) {
+		rateLimiter.setRates(bytesPerSecond, requestsPerSecond, bytesPerSecondPerDest, requestsPerSecondPerDest);
+		this.max_send_rate = bytesPerSecond;
+		this.max_send_request_rate = requestsPerSecond;
+		this.max_send_rate_per_dest = bytesPerSecondPerDest;
+		this.max_send_request_rate_per_dest = requestsPerSecondPerDest;
+		LOG.info("Using rate limits: {}", printRateLimits());
+	}
+
+	@ManagedOperation(description = "Print the rate limits and the messages queued because of them")
+	public String printRateLimits() {
+		return rateLimiter.toString();
+	}
+
+	@ManagedAttribute(description = "Number of bytes of messages currently queued because of rate limits")
+	public long getRateLimitQueueBytes() {
+		return rateLimiter.getQueuedBytes();
+	}
+
+	@ManagedAttribute(description = "Number of messages delayed because of rate limits")
+	public long getRateLimitDelayed() {
+		return rateLimiter.getDelayed();
 	}
 
-	private URI getServiceUrl(final IpAddress destIpAddress) {
+	@ManagedAttribute(description = "Number of messages dropped because the rate limit queue of their destination was full")
+	public long getRateLimitDropped() {
+		return rateLimiter.getDropped();
+	}
+
+	@ManagedAttribute(description = "Number of times sending to a destination was paused because it was overloaded")
+	public long getOverloadPauses() {
+		return overloadPauses.sum();
+	}
+
+	@ManagedAttribute(description = "Number of requests without response abandoned because their destination left the view")
+	public long getPurgedRequests() {
+		return purgedRequests.sum();
+	}
+
+	@ManagedAttribute(description = "Number of bytes of queued messages released because their destination left the view. "
+			+ "Messages of abandoned requests are not included, as the client holds them until the response or "
+			+ "the deadline.")
+	public long getPurgedBytes() {
+		return purgedBytes.sum();
+	}
+
+	@ManagedAttribute(description = "Number of requests cancelled because no response was received before their deadline")
+	public long getRequestsTimedOut() {
+		return requestsTimedOut.sum();
+	}
+
+	@ManagedAttribute(description = "Number of messages rejected by the destination with status 413 because they "
+			+ "exceeded its receive limits. These messages are not sent again.")
+	public long getRejectedTooLarge() {
+		return rejectedTooLarge.sum();
+	}
+
+	@ManagedAttribute(description = "Number of messages dropped because the circuit breaker of the destination was open")
+	public long getCircuitBreakerRejected() {
+		return breakerRejected.sum();
+	}
+
+	@ManagedOperation(description = "Print the circuit breaker state for all known peers")
+	public String printCircuitBreakers() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Peer peer : peers.values()) {
+			sb.append(peer.getAddress()).append(": ").append(peer.getCircuitBreaker()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@ManagedAttribute(description = "Number of received messages waiting in receive stripes")
+	public int getReceiveQueueSize() {
+		final StripedExecutor executor = receiveExecutor;
+		return executor == null ? 0 : executor.getQueueSize();
+	}
+
+	public boolean isConfirmDelivery() {
+		return confirm_delivery;
+	}
+
+	/**
+	 * FRAG2 sends messages larger than its frag_size as fragments, each as a
+	 * single request, so receivers need a max content size of at least
+	 * frag_size plus room for headers. Without FRAG2, the size of messages is
+	 * not bounded by the protocol stack.
+	 * @return The max content size required to receive messages of this stack,
+	 *         or 0 if unknown
+	 */
+	public long getRequiredMaxContentSize() {
+		final ProtocolStack stack = getProtocolStack();
+		final FRAG2 frag = stack == null ? null : stack.findProtocol(FRAG2.class);
+		return frag == null ? 0 : (long) frag.getFragSize() + FRAGMENT_HEADER_ROOM;
+	}
+
+	/**
+	 * Set the admission control of the server receiving messages for this
+	 * transport, so its counters are available via JMX.
+	 */
+	public void setAdmissionControl(final AdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+
+	@ManagedAttribute(description = "Number of messages being received")
+	public int getAdmissionRequests() {
+		final AdmissionControl admission = admissionControl;
+		return admission == null ? 0 : admission.getRequests();
+	}
+
+	@ManagedAttribute(description = "Number of bytes reserved for messages being received")
+	public long getAdmissionBufferedBytes() {
+		final AdmissionControl admission = admissionControl;
+		return admission == null ? 0 : admission.getBufferedBytes();
+	}
+
+	@ManagedAttribute(description = "Number of messages rejected with status 503 because of admission limits or overload")
+	public long getAdmissionRejected() {
+		final AdmissionControl admission = admissionControl;
+		return admission == null ? 0 : admission.getRejected();
+	}
+
+	@ManagedAttribute(description = "Number of received messages currently held back waiting for a missing predecessor")
+	public int getReorderBufferSize() {
+		return reorderBuffer.getBuffered();
+	}
+
+	@ManagedAttribute(description = "Number of received messages held back because they overtook a predecessor")
+	public long getReorderedMessages() {
+		return reorderBuffer.getHeld();
+	}
+
+	@ManagedAttribute(description = "Number of received messages arriving after a successor was passed on")
+	public long getLateMessages() {
+		return reorderBuffer.getLate();
+	}
+
+	@ManagedAttribute(description = "Number of times a missing message was given up on after reorder_timeout "
+			+ "or when max_reorder_buffer was exceeded")
+	public long getReorderGapsSkipped() {
+		return reorderBuffer.getGapsSkipped();
+	}
+
+	@ManagedAttribute(description = "Number of messages delivered to channels in this JVM without HTTP")
+	public long getLocalDeliveries() {
+		return localDeliveries.sum();
+	}
+
+	@ManagedAttribute(description = "Number of connections pre-warmed on view change")
+	public long getPrewarmCount() {
+		return prewarmTimes.getCount();
+	}
+
+	@ManagedOperation(description = "Print the times needed to pre-warm connections, including connection setup and TLS handshake")
+	public String printPrewarmTimes() {
+		return prewarmTimes.toString();
+	}
+
+	private URI getServiceUrl(final Peer peer) {
+		URI serviceUrl = peer.getServiceUrl();
+		if (serviceUrl == null) {
+			serviceUrl = newServiceUrl((IpAddress)peer.getAddress());
+			peer.setServiceUrl(serviceUrl);
+		}
+		return serviceUrl;
+	}
+
+	private URI newServiceUrl(final IpAddress destIpAddress) {
 		final StringBuilder sb = new StringBuilder();
-		sb.append("https://");
+		sb.append(scheme);
+		sb.append("://");
 
 		final String hostName = getHostName(destIpAddress);
 		if (hostName != null) {
@@ -251,40 +1838,39 @@ public class HTTP extends TP implements HttpReceiver {
 	}
 
 	protected IpAddress createLocalAddress() {
-		if (external_addr == null || external_port == 0) {
+		InetAddress addr = external_addr;
+		int port = external_port;
+		if (embeddedServer != null) {
+			// Other nodes reach the embedded server directly by default
+			if (addr == null && bind_addr != null && !bind_addr.isAnyLocalAddress()) {
+				addr = bind_addr;
+			}
+			if (port == 0) {
+				port = embeddedServer.getLocalPort();
+			}
+		}
+		if (addr == null || port <= 0) {
 			throw new IllegalStateException("External address is not set");
 		}
-		return new HostAddress(external_addr, external_port);
+		final HostAddress address = new HostAddress(addr, port);
+		address.setCompactEncoding(compact_address_encoding);
+		return address;
 	}
 
-	// Implementation taken from org.jgroups.protocols.TP.sendToSingleMember(Address, byte[], int, int)
+	/**
+	 * Get the physical address of the given member without blocking. If the
+	 * address is unknown, discovery is started in the background.
+	 * @return The physical address or <code>null</code> if unknown yet
+	 */
 	public PhysicalAddress getPhysicalAddress(final Address dest) {
 		if (dest instanceof PhysicalAddress) {
 			return (PhysicalAddress)dest;
 		}
 
-		PhysicalAddress physical_dest;
-		if ((physical_dest = getPhysicalAddressFromCache(dest)) != null) {
-			return physical_dest;
-		}
-
-		if (who_has_cache.addIfAbsentOrExpired(dest)) { // true if address was added
-			// FIND_MBRS must return quickly
-			final Responses responses = fetchResponsesFromDiscoveryProtocol(Collections.singletonList(dest));
-			try {
-				for (final PingData data : responses) {
-					if (data.getAddress() != null && data.getAddress().equals(dest)) {
-						if ((physical_dest = data.getPhysicalAddr()) != null) {
-							return physical_dest;
-						}
-					}
-				}
-				log.warn(Util.getMessage("PhysicalAddrMissing"), local_addr, dest);
-			} finally {
-				responses.done();
-			}
+		final PhysicalAddress physical_dest = getPhysicalAddressFromCache(dest);
+		if (physical_dest == null) {
+			findPhysicalAddressAsync(dest);
 		}
-
-		return null;
+		return physical_dest;
 	}
 }
@@ -4,7 +4,6 @@ package org.jgroups.protocols.mklinger;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 import org.jgroups.Address;
@@ -44,7 +43,7 @@ public class HTTPPING extends Discovery {
 			"Ideally, all members should be listed. If this is not possible, send_cache_on_join and / or return_entire_cache " +
 			"can be set to true",
 			converter=InitialPingAddressesConverter.class)
-	protected List<PhysicalAddress> initial_ping_addresses = Collections.emptyList();
+	protected volatile InitialPingAddresses initial_ping_addresses = InitialPingAddresses.EMPTY;
 
 	@Property(description="max number of hosts to keep beyond the ones in initial_hosts")
 	protected int max_dynamic_hosts=2000;
@@ -134,6 +133,8 @@ public class HTTPPING extends Discovery {
 			}
 		}
 
+		refreshInitialPingAddresses();
+
 		final List<PhysicalAddress> cluster_members=new ArrayList<>(initial_ping_addresses.size() + (dynamic_hosts != null? dynamic_hosts.size() : 0) + 5);
 		initial_ping_addresses.stream().filter(phys_addr -> !cluster_members.contains(phys_addr)).forEach(cluster_members::add);
 
@@ -170,6 +171,15 @@ public class HTTPPING extends Discovery {
 		}
 	}
 
+	/**
+	 * Update initial ping addresses looked up by host name to the addresses
+	 * currently cached by the {@link DnsCache}, and retry host names that
+	 * could not be resolved yet, see {@link InitialPingAddresses#refresh()}.
+	 */
+	protected void refreshInitialPingAddresses() {
+		initial_ping_addresses = initial_ping_addresses.refresh();
+	}
+
 	protected void sendDiscoveryRequest(final Message req) {
 		try {
 			log.trace("%s: sending discovery request to %s", local_addr, req.getDest());
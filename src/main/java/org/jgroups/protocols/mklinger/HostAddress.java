@@ -7,6 +7,7 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -14,6 +15,19 @@ import org.jgroups.Global;
 import org.jgroups.stack.IpAddress;
 
 public class HostAddress extends IpAddress {
+	/** Marker for the compact encoding. The legacy encoding always starts with 0. */
+	private static final byte COMPACT_ENCODING_V1 = (byte) 0x81;
+
+	/**
+	 * Whether to write the compact encoding. Set by the transport for its
+	 * own address and kept for addresses read in the compact encoding. Not
+	 * serialized and not part of equality.
+	 */
+	private boolean compactEncoding;
+
+	/** Whether the IP address was looked up by host name. Not serialized. */
+	private transient boolean resolvedByName;
+
 	public HostAddress() {
 	}
 
@@ -29,39 +43,90 @@ public class HostAddress extends IpAddress {
 		super(sock_addr);
 	}
 
-	/** e.g. 192.168.1.5:7800 or localhost/127.0.0.1:8080 */
+	/**
+	 * e.g. 192.168.1.5:7800 or localhost/127.0.0.1:8080. Host names are
+	 * resolved using the {@link DnsCache#getDefault() default DNS cache},
+	 * waiting at most {@link DnsCache#DEFAULT_RESOLVE_TIMEOUT_MILLIS}.
+	 */
 	public HostAddress(final String addr_port) throws Exception {
+		this(addr_port, DnsCache.DEFAULT_RESOLVE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * e.g. 192.168.1.5:7800 or localhost/127.0.0.1:8080. Host names are
+	 * resolved using the {@link DnsCache#getDefault() default DNS cache}.
+	 * @param resolveTimeoutMillis Maximum time to wait for a host name lookup.
+	 *        With 0, this constructor never waits for DNS.
+	 * @throws java.net.UnknownHostException If a host name could not be
+	 *         resolved in time
+	 */
+	public HostAddress(final String addr_port, final long resolveTimeoutMillis) throws Exception {
 		final int lastColonIdx = addr_port.lastIndexOf(':');
-		String withoutPort;
+		final int end;
 		if(lastColonIdx == -1) {
-			withoutPort = addr_port;
+			end = addr_port.length();
 		} else {
-			withoutPort = addr_port.substring(0, lastColonIdx);
-			port = Integer.valueOf(addr_port.substring(lastColonIdx+1));
+			end = lastColonIdx;
+			port = parsePort(addr_port, lastColonIdx + 1);
 		}
 
 		String hostName;
-		String ip;
-		final int firstSlashIdx = withoutPort.indexOf('/');
-		if (firstSlashIdx == -1) {
+		final int ipStart;
+		final int firstSlashIdx = addr_port.indexOf('/');
+		if (firstSlashIdx == -1 || firstSlashIdx >= end) {
 			hostName = null;
-			ip = withoutPort;
+			ipStart = 0;
 		} else {
-			hostName = withoutPort.substring(0, firstSlashIdx);
+			hostName = addr_port.substring(0, firstSlashIdx);
 			if (hostName.isEmpty()) {
 				hostName = null;
 			}
-			ip = withoutPort.substring(firstSlashIdx + 1);
+			ipStart = firstSlashIdx + 1;
 		}
 
-		final byte[] ipBytes = InetAddresses.ipStringToBytes(ip);
+		final byte[] ipBytes = InetAddresses.ipStringToBytes(addr_port, ipStart, end);
 		if (ipBytes == null) {
-			ip_addr = InetAddress.getByName(ip);
+			ip_addr = DnsCache.getDefault().resolve(addr_port.substring(ipStart, end), resolveTimeoutMillis);
+			resolvedByName = true;
 		} else {
 			ip_addr = InetAddress.getByAddress(hostName, ipBytes);
 		}
 	}
 
+	private static int parsePort(final String s, final int start) {
+		if (start == s.length() || s.length() - start > 5) {
+			throw new NumberFormatException("Invalid port in '" + s + "'");
+		}
+		int port = 0;
+		for (int i = start; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Invalid port in '" + s + "'");
+			}
+			port = port * 10 + (c - '0');
+		}
+		return port;
+	}
+
+	/**
+	 * @return <code>true</code> if this address was parsed from a string
+	 *         without IP address and the IP address was looked up by host name
+	 */
+	boolean isResolvedByName() {
+		return resolvedByName;
+	}
+
+	/**
+	 * @return A copy of this address with the given IP address, looked up by
+	 *         the host name of this address
+	 */
+	HostAddress withResolvedIpAddress(final InetAddress resolved) {
+		final HostAddress copy = new HostAddress(resolved, port);
+		copy.resolvedByName = true;
+		copy.compactEncoding = compactEncoding;
+		return copy;
+	}
+
 	@Override
 	public Supplier<? extends IpAddress> create() {
 		return HostAddress::new;
@@ -69,7 +134,9 @@ public class HostAddress extends IpAddress {
 
 	@Override
 	public HostAddress copy() {
-		return new HostAddress(ip_addr, port);
+		final HostAddress copy = new HostAddress(ip_addr, port);
+		copy.compactEncoding = compactEncoding;
+		return copy;
 	}
 
 	@Override
@@ -82,14 +149,56 @@ public class HostAddress extends IpAddress {
 		return printIpAddress();
 	}
 
+	/**
+	 * Write this address in the compact encoding instead of the legacy
+	 * encoding. Only enable once all nodes of the cluster can read the
+	 * compact encoding. Reading always supports both encodings.
+	 * @param compactEncoding <code>true</code> to write the compact encoding
+	 */
+	public void setCompactEncoding(final boolean compactEncoding) {
+		this.compactEncoding = compactEncoding;
+	}
+
+	public boolean isCompactEncoding() {
+		return compactEncoding;
+	}
+
+	public String getHostName() {
+		final String s = ip_addr.toString();
+		final int idx = s.indexOf('/');
+		if (idx > 0) {
+			return s.substring(0, idx);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the host name to serialize. Omitted if it is the same as the textual
+	 * IP address.
+	 */
+	private String getSerializedHostName() {
+		final String hostName = getHostName();
+		if (hostName != null && ip_addr != null && hostName.equals(ip_addr.getHostAddress())) {
+			return null;
+		}
+		return hostName;
+	}
+
 	@Override
 	public void writeTo(final DataOutput out) throws Exception {
-		writeHostName(out);
-		writeIp(out);
+		if (compactEncoding) {
+			out.writeByte(COMPACT_ENCODING_V1);
+			writeCompactHostName(out);
+			writeCompactIp(out);
+		} else {
+			writeLegacyHostName(out);
+			writeLegacyIp(out);
+		}
 		writePort(out);
 	}
 
-	private void writeHostName(final DataOutput out) throws IOException {
+	private void writeLegacyHostName(final DataOutput out) throws IOException {
 		final String hostName = getHostName();
 		if (hostName == null) {
 			out.writeInt(0);
@@ -99,23 +208,38 @@ public class HostAddress extends IpAddress {
 		}
 	}
 
-	public String getHostName() {
-		final String s = ip_addr.toString();
-		final int idx = s.indexOf('/');
-		if (idx > 0) {
-			return s.substring(0, idx);
+	private void writeLegacyIp(final DataOutput out) throws IOException {
+		if(ip_addr != null) {
+			final byte[] address=ip_addr.getAddress();  // 4 bytes (IPv4) or 16 bytes (IPv6)
+			out.writeByte(address.length); // 1 byte
+			out.write(address, 0, address.length);
+			if(ip_addr instanceof Inet6Address) {
+				out.writeInt(((Inet6Address)ip_addr).getScopeId());
+			}
+		}
+		else {
+			out.writeByte(0);
+		}
+	}
+
+	private void writeCompactHostName(final DataOutput out) throws IOException {
+		final String hostName = getSerializedHostName();
+		if (hostName == null) {
+			writeVarInt(out, 0);
 		} else {
-			return null;
+			final byte[] bytes = hostName.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(out, bytes.length);
+			out.write(bytes);
 		}
 	}
 
-	private void writeIp(final DataOutput out) throws IOException {
+	private void writeCompactIp(final DataOutput out) throws IOException {
 		if(ip_addr != null) {
 			final byte[] address=ip_addr.getAddress();  // 4 bytes (IPv4) or 16 bytes (IPv6)
 			out.writeByte(address.length); // 1 byte
 			out.write(address, 0, address.length);
 			if(ip_addr instanceof Inet6Address) {
-				out.writeInt(((Inet6Address)ip_addr).getScopeId());
+				writeVarInt(out, ((Inet6Address)ip_addr).getScopeId());
 			}
 		}
 		else {
@@ -129,21 +253,26 @@ public class HostAddress extends IpAddress {
 
 	@Override
 	public void readFrom(final DataInput in) throws Exception {
-		readHostNameAndIp(in);
+		final byte firstByte = in.readByte();
+		if (firstByte == COMPACT_ENCODING_V1) {
+			readCompactHostNameAndIp(in);
+			compactEncoding = true;
+		} else if (firstByte == 0) {
+			// Legacy encoding starts with a 4 byte host name length
+			readLegacyHostNameAndIp(in);
+			compactEncoding = false;
+		} else {
+			throw new IOException("Unsupported host address encoding: " + firstByte);
+		}
 		readPort(in);
 	}
 
-	private void readHostNameAndIp(final DataInput in) throws IOException {
-		final String hostName = doReadHostName(in);
-
-		final int len=in.readByte();
-		if(len > 0 && (len != Global.IPV4_SIZE && len != Global.IPV6_SIZE)) {
-			throw new IOException("length has to be " + Global.IPV4_SIZE + " or " + Global.IPV6_SIZE + " bytes (was " +
-					len + " bytes)");
-		}
-		final byte[] a = new byte[len]; // 4 bytes (IPv4) or 16 bytes (IPv6)
-		in.readFully(a);
-		if(len == Global.IPV6_SIZE) {
+	private void readLegacyHostNameAndIp(final DataInput in) throws IOException {
+		// first byte of the length was already read and is 0
+		final int hostNameLength = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+		final String hostName = readLegacyHostName(in, hostNameLength);
+		final byte[] a = readIpBytes(in);
+		if(a.length == Global.IPV6_SIZE) {
 			final int scope_id=in.readInt();
 			this.ip_addr=Inet6Address.getByAddress(hostName, a, scope_id);
 		}
@@ -152,8 +281,7 @@ public class HostAddress extends IpAddress {
 		}
 	}
 
-	private String doReadHostName(final DataInput in) throws IOException {
-		final int len = in.readInt();
+	private String readLegacyHostName(final DataInput in, final int len) throws IOException {
 		if (len == 0) {
 			return null;
 		}
@@ -164,6 +292,35 @@ public class HostAddress extends IpAddress {
 		return new String(buf);
 	}
 
+	private void readCompactHostNameAndIp(final DataInput in) throws IOException {
+		final int hostNameLength = readVarInt(in);
+		String hostName = null;
+		if (hostNameLength > 0) {
+			final byte[] bytes = new byte[hostNameLength];
+			in.readFully(bytes);
+			hostName = new String(bytes, StandardCharsets.UTF_8);
+		}
+		final byte[] a = readIpBytes(in);
+		if(a.length == Global.IPV6_SIZE) {
+			final int scope_id=readVarInt(in);
+			this.ip_addr=Inet6Address.getByAddress(hostName, a, scope_id);
+		}
+		else {
+			this.ip_addr=InetAddress.getByAddress(hostName, a);
+		}
+	}
+
+	private byte[] readIpBytes(final DataInput in) throws IOException {
+		final int len=in.readByte();
+		if(len > 0 && (len != Global.IPV4_SIZE && len != Global.IPV6_SIZE)) {
+			throw new IOException("length has to be " + Global.IPV4_SIZE + " or " + Global.IPV6_SIZE + " bytes (was " +
+					len + " bytes)");
+		}
+		final byte[] a = new byte[len]; // 4 bytes (IPv4) or 16 bytes (IPv6)
+		in.readFully(a);
+		return a;
+	}
+
 	private void readPort(final DataInput in) throws IOException {
 		// changed from readShort(): we need the full 65535, with a short we'd only get up to 32K !
 		port=in.readUnsignedShort();
@@ -171,12 +328,91 @@ public class HostAddress extends IpAddress {
 
 	@Override
 	public int serializedSize() {
-		// length (1 bytes) + 4 bytes for port
-		int tmp_size=Global.BYTE_SIZE+ Global.SHORT_SIZE;
-		if(ip_addr != null) {
-			// 4 bytes for IPv4, 20 for IPv6 (16 + 4 for scope-id)
-			tmp_size+=(ip_addr instanceof Inet4Address)? 4 : 20;
+		if (!compactEncoding) {
+			return legacySerializedSize();
+		}
+		// encoding (1 byte) + ip length (1 byte) + port (2 bytes)
+		int size = Global.BYTE_SIZE + Global.BYTE_SIZE + Global.SHORT_SIZE;
+		final String hostName = getSerializedHostName();
+		final int hostNameLength = hostName == null ? 0 : utf8Length(hostName);
+		size += varIntSize(hostNameLength) + hostNameLength;
+		if (ip_addr instanceof Inet4Address) {
+			size += Global.IPV4_SIZE;
+		} else if (ip_addr instanceof Inet6Address) {
+			size += Global.IPV6_SIZE + varIntSize(((Inet6Address)ip_addr).getScopeId());
+		}
+		return size;
+	}
+
+	private int legacySerializedSize() {
+		// host name length (4 bytes) + ip length (1 byte) + port (2 bytes)
+		int size = Global.INT_SIZE + Global.BYTE_SIZE + Global.SHORT_SIZE;
+		final String hostName = getHostName();
+		if (hostName != null) {
+			size += hostName.length() * 2;
+		}
+		if (ip_addr instanceof Inet4Address) {
+			size += Global.IPV4_SIZE;
+		} else if (ip_addr instanceof Inet6Address) {
+			// 16 bytes + 4 bytes for scope-id
+			size += Global.IPV6_SIZE + Global.INT_SIZE;
+		}
+		return size;
+	}
+
+	/**
+	 * Number of bytes of the given string in UTF-8, consistent with
+	 * {@link String#getBytes(java.nio.charset.Charset)}.
+	 */
+	private static int utf8Length(final String s) {
+		int len = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				len += 1;
+			} else if (c < 0x800) {
+				len += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				len += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// malformed, replaced with '?'
+				len += 1;
+			} else {
+				len += 3;
+			}
+		}
+		return len;
+	}
+
+	private static void writeVarInt(final DataOutput out, final int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	private static int readVarInt(final DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length int");
+	}
+
+	private static int varIntSize(final int value) {
+		int size = 1;
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			size++;
+			v >>>= 7;
 		}
-		return tmp_size;
+		return size;
 	}
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded interning cache for {@link HostAddress} instances. Returns one
+ * canonical instance per host name, IP address and port, so parsing is only
+ * done once per address string and equality checks can use identity.
+ * <p>
+ * Returned instances are shared and must not be modified.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class HostAddresses {
+	private static final int MAX_SIZE = 4096;
+
+	/** Maps address strings and canonical string representations to canonical instances */
+	private static final ConcurrentMap<String, HostAddress> CACHE = new ConcurrentHashMap<>();
+
+	/** No instantiation */
+	private HostAddresses() {}
+
+	/**
+	 * Get the canonical instance for the given address string. Never waits
+	 * for DNS: if the string contains a host name without IP address that is
+	 * not in the {@link DnsCache} yet, the lookup is started in the background
+	 * and an {@link java.net.UnknownHostException} is thrown.
+	 * @param addr_port Address string as accepted by {@link HostAddress#HostAddress(String)}
+	 */
+	public static HostAddress valueOf(final String addr_port) throws Exception {
+		final HostAddress cached = CACHE.get(addr_port);
+		if (cached != null) {
+			return cached;
+		}
+		final HostAddress address = new HostAddress(addr_port, 0);
+		final HostAddress canonical = intern(address);
+		if (!address.isResolvedByName()) {
+			// Host names are not cached by string, so the DNS TTL applies
+			put(addr_port, canonical);
+		}
+		return canonical;
+	}
+
+	/**
+	 * Get the canonical instance for the given address. If there is none
+	 * yet, the given address becomes the canonical instance.
+	 */
+	public static HostAddress intern(final HostAddress address) {
+		final String key = address.printIpAddress();
+		final HostAddress cached = CACHE.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		return put(key, address);
+	}
+
+	private static HostAddress put(final String key, final HostAddress address) {
+		if (CACHE.size() >= MAX_SIZE) {
+			// Simple bound: the cache is only expected to overflow for
+			// unusual address churn.
+			CACHE.clear();
+		}
+		final HostAddress existing = CACHE.putIfAbsent(key, address);
+		return existing != null ? existing : address;
+	}
+
+	public static int size() {
+		return CACHE.size();
+	}
+
+	public static void clear() {
+		CACHE.clear();
+	}
+}
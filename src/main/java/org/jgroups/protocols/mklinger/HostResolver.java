@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves host names to addresses. May block.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@FunctionalInterface
+public interface HostResolver {
+	/** Resolver using the name service of the JVM */
+	HostResolver SYSTEM = InetAddress::getByName;
+
+	InetAddress resolve(String host) throws UnknownHostException;
+}
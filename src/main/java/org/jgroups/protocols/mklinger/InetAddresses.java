@@ -21,13 +21,14 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Locale;
 
 public class InetAddresses {
-	private static int IPV4_PART_COUNT = 4;
-	private static int IPV6_PART_COUNT = 8;
+	private static final int IPV4_PART_COUNT = 4;
+	private static final int IPV6_PART_COUNT = 8;
+	private static final int IPV4_SIZE = 4;
+	private static final int IPV6_SIZE = 16;
 
 	/** No instantiation */
 	private InetAddresses() {}
@@ -36,151 +37,190 @@ public class InetAddresses {
 		return ipStringToBytes(ipString) != null;
 	}
 
-	public static byte[] ipStringToBytes(String ipString) {
-		// Make a first pass to categorize the characters in this string.
-		boolean hasColon = false;
-		boolean hasDot = false;
-		for (int i = 0; i < ipString.length(); i++) {
-			final char c = ipString.charAt(i);
-			if (c == '.') {
-				hasDot = true;
-			} else if (c == ':') {
-				if (hasDot) {
-					return null;  // Colons must not appear after dots.
-				}
-				hasColon = true;
-			} else if (Character.digit(c, 16) == -1) {
-				return null;  // Everything else must be a decimal or hex digit.
-			}
-		}
+	public static byte[] ipStringToBytes(final String ipString) {
+		return ipStringToBytes(ipString, 0, ipString.length());
+	}
 
-		// Now decide which address family to parse.
-		if (hasColon) {
-			if (hasDot) {
-				ipString = convertDottedQuadToHex(ipString);
-				if (ipString == null) {
-					return null;
-				}
-			}
-			return textToNumericFormatV6(ipString);
-		} else if (hasDot) {
-			return textToNumericFormatV4(ipString);
+	/**
+	 * Parse an IPv4 or IPv6 string literal from the given range of characters.
+	 * Only the returned array is allocated.
+	 *
+	 * @return The 4 or 16 address bytes or <code>null</code> if the range does
+	 *         not contain a valid IP string literal
+	 */
+	public static byte[] ipStringToBytes(final CharSequence s, final int start, final int end) {
+		final int family = detectFamily(s, start, end);
+		if (family == IPV4_SIZE) {
+			final byte[] bytes = new byte[IPV4_SIZE];
+			return parseV4(s, start, end, bytes, 0) ? bytes : null;
+		} else if (family == IPV6_SIZE) {
+			final byte[] bytes = new byte[IPV6_SIZE];
+			return parseV6(s, start, end, bytes) ? bytes : null;
 		}
 		return null;
 	}
 
-	private static String convertDottedQuadToHex(final String ipString) {
-		final int lastColon = ipString.lastIndexOf(':');
-		final String initialPart = ipString.substring(0, lastColon + 1);
-		final String dottedQuad = ipString.substring(lastColon + 1);
-		final byte[] quad = textToNumericFormatV4(dottedQuad);
-		if (quad == null) {
-			return null;
+	/**
+	 * Parse an IPv4 or IPv6 string literal from the given range of characters
+	 * into the given array without allocating. On failure, the content of the
+	 * array is undefined.
+	 *
+	 * @param dst Destination array, must have room for 16 bytes
+	 * @return 4 for an IPv4 address, 16 for an IPv6 address or -1 if the range
+	 *         does not contain a valid IP string literal
+	 */
+	public static int parseIp(final CharSequence s, final int start, final int end, final byte[] dst) {
+		final int family = detectFamily(s, start, end);
+		if (family == IPV4_SIZE) {
+			return parseV4(s, start, end, dst, 0) ? IPV4_SIZE : -1;
+		} else if (family == IPV6_SIZE) {
+			return parseV6(s, start, end, dst) ? IPV6_SIZE : -1;
 		}
-		final String penultimate = Integer.toHexString(((quad[0] & 0xff) << 8) | (quad[1] & 0xff));
-		final String ultimate = Integer.toHexString(((quad[2] & 0xff) << 8) | (quad[3] & 0xff));
-		return initialPart + penultimate + ":" + ultimate;
+		return -1;
 	}
 
-	private static byte[] textToNumericFormatV4(final String ipString) {
-		final String[] address = ipString.split("\\.", IPV4_PART_COUNT + 1);
-		if (address.length != IPV4_PART_COUNT) {
-			return null;
-		}
-
-		final byte[] bytes = new byte[IPV4_PART_COUNT];
-		try {
-			for (int i = 0; i < bytes.length; i++) {
-				bytes[i] = parseOctet(address[i]);
+	/**
+	 * The first separator decides about the address family. It must come
+	 * after at most 4 characters (max length of an IPv6 hextet).
+	 */
+	private static int detectFamily(final CharSequence s, final int start, final int end) {
+		final int max = Math.min(end, start + 5);
+		for (int i = start; i < max; i++) {
+			final char c = s.charAt(i);
+			if (c == '.') {
+				return IPV4_SIZE;
+			} else if (c == ':') {
+				return IPV6_SIZE;
+			} else if (hexValue(c) == -1) {
+				return -1;
 			}
-		} catch (final NumberFormatException ex) {
-			return null;
 		}
-
-		return bytes;
+		return -1;
 	}
 
-	private static byte parseOctet(final String ipPart) {
-		// Note: we already verified that this string contains only hex digits.
-		final int octet = Integer.parseInt(ipPart);
-		// Disallow leading zeroes, because no clear standard exists on
-		// whether these should be interpreted as decimal or octal.
-		if (octet > 255 || (ipPart.startsWith("0") && ipPart.length() > 1)) {
-			throw new NumberFormatException();
+	private static boolean parseV4(final CharSequence s, final int start, final int end, final byte[] dst, final int offset) {
+		int i = start;
+		for (int part = 0; part < IPV4_PART_COUNT; part++) {
+			if (part > 0) {
+				if (i == end || s.charAt(i) != '.') {
+					return false;
+				}
+				i++;
+			}
+			final int partStart = i;
+			int octet = 0;
+			while (i < end) {
+				final char c = s.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				octet = octet * 10 + (c - '0');
+				i++;
+				if (i - partStart > 3) {
+					return false;
+				}
+			}
+			final int partLength = i - partStart;
+			// Disallow leading zeroes, because no clear standard exists on
+			// whether these should be interpreted as decimal or octal.
+			if (partLength == 0 || octet > 255 || (partLength > 1 && s.charAt(partStart) == '0')) {
+				return false;
+			}
+			dst[offset + part] = (byte) octet;
 		}
-		return (byte) octet;
+		return i == end;
 	}
 
-	private static byte[] textToNumericFormatV6(final String ipString) {
-		// An address can have [2..8] colons, and N colons make N+1 parts.
-		final String[] parts = ipString.split(":", IPV6_PART_COUNT + 2);
-		if (parts.length < 3 || parts.length > IPV6_PART_COUNT + 1) {
-			return null;
-		}
-
-		// Disregarding the endpoints, find "::" with nothing in between.
-		// This indicates that a run of zeroes has been skipped.
+	private static boolean parseV6(final CharSequence s, final int start, final int end, final byte[] dst) {
+		int i = start;
+		int hextets = 0;
+		// Hextet index where a "::" was found, i.e. where zeroes were skipped
 		int skipIndex = -1;
-		for (int i = 1; i < parts.length - 1; i++) {
-			if (parts[i].length() == 0) {
-				if (skipIndex >= 0) {
-					return null;  // Can't have more than one ::
-				}
-				skipIndex = i;
+
+		if (i < end && s.charAt(i) == ':') {
+			// ^: requires ^::
+			if (i + 1 >= end || s.charAt(i + 1) != ':') {
+				return false;
 			}
+			skipIndex = 0;
+			i += 2;
 		}
 
-		int partsHi;  // Number of parts to copy from above/before the "::"
-		int partsLo;  // Number of parts to copy from below/after the "::"
-		if (skipIndex >= 0) {
-			// If we found a "::", then check if it also covers the endpoints.
-			partsHi = skipIndex;
-			partsLo = parts.length - skipIndex - 1;
-			if (parts[0].length() == 0 && --partsHi != 0) {
-				return null;  // ^: requires ^::
+		while (i < end) {
+			if (hextets == IPV6_PART_COUNT) {
+				return false;
 			}
-			if (parts[parts.length - 1].length() == 0 && --partsLo != 0) {
-				return null;  // :$ requires ::$
+			final int partStart = i;
+			int hextet = 0;
+			while (i < end) {
+				final int digit = hexValue(s.charAt(i));
+				if (digit == -1) {
+					break;
+				}
+				hextet = (hextet << 4) | digit;
+				i++;
 			}
-		} else {
-			// Otherwise, allocate the entire address to partsHi.  The endpoints
-			// could still be empty, but parseHextet() will check for that.
-			partsHi = parts.length;
-			partsLo = 0;
-		}
-
-		// If we found a ::, then we must have skipped at least one part.
-		// Otherwise, we must have exactly the right number of parts.
-		final int partsSkipped = IPV6_PART_COUNT - (partsHi + partsLo);
-		if (!(skipIndex >= 0 ? partsSkipped >= 1 : partsSkipped == 0)) {
-			return null;
-		}
+			if (i < end && s.charAt(i) == '.') {
+				// Embedded IPv4 address, must be last and fit in the remaining hextets
+				if (hextets > IPV6_PART_COUNT - 2 || !parseV4(s, partStart, end, dst, 2 * hextets)) {
+					return false;
+				}
+				hextets += 2;
+				i = end;
+				break;
+			}
+			final int partLength = i - partStart;
+			if (partLength == 0 || partLength > 4) {
+				return false;
+			}
+			dst[2 * hextets] = (byte) (hextet >> 8);
+			dst[2 * hextets + 1] = (byte) hextet;
+			hextets++;
 
-		// Now parse the hextets into a byte array.
-		final ByteBuffer rawBytes = ByteBuffer.allocate(2 * IPV6_PART_COUNT);
-		try {
-			for (int i = 0; i < partsHi; i++) {
-				rawBytes.putShort(parseHextet(parts[i]));
+			if (i == end) {
+				break;
 			}
-			for (int i = 0; i < partsSkipped; i++) {
-				rawBytes.putShort((short) 0);
+			if (s.charAt(i) != ':') {
+				return false;
 			}
-			for (int i = partsLo; i > 0; i--) {
-				rawBytes.putShort(parseHextet(parts[parts.length - i]));
+			i++;
+			if (i == end) {
+				// :$ requires ::$
+				return false;
 			}
-		} catch (final NumberFormatException ex) {
-			return null;
+			if (s.charAt(i) == ':') {
+				if (skipIndex != -1) {
+					return false;  // Can't have more than one ::
+				}
+				skipIndex = hextets;
+				i++;
+			}
+		}
+
+		if (skipIndex == -1) {
+			return hextets == IPV6_PART_COUNT;
+		}
+		// If we found a ::, then we must have skipped at least one part.
+		if (hextets == IPV6_PART_COUNT) {
+			return false;
 		}
-		return rawBytes.array();
+		// Move the hextets after the :: to the end and fill the gap with zeroes
+		final int skipped = IPV6_PART_COUNT - hextets;
+		final int tailBytes = 2 * (hextets - skipIndex);
+		System.arraycopy(dst, 2 * skipIndex, dst, 2 * (skipIndex + skipped), tailBytes);
+		Arrays.fill(dst, 2 * skipIndex, 2 * (skipIndex + skipped), (byte) 0);
+		return true;
 	}
 
-	private static short parseHextet(final String ipPart) {
-		// Note: we already verified that this string contains only hex digits.
-		final int hextet = Integer.parseInt(ipPart, 16);
-		if (hextet > 0xffff) {
-			throw new NumberFormatException();
+	private static int hexValue(final char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
 		}
-		return (short) hextet;
+		return -1;
 	}
 
 	/**
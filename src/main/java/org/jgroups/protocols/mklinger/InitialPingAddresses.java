@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jgroups.PhysicalAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Initial ping addresses of {@link HTTPPING}. Entries whose host name could
+ * not be resolved yet are kept and retried on each refresh, so a node
+ * started before the DNS entries of its peers existed still finds them.
+ * <p>
+ * Instances are immutable, {@link #refresh()} returns a new instance.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class InitialPingAddresses extends AbstractList<PhysicalAddress> {
+	private static final Logger LOG = LoggerFactory.getLogger(InitialPingAddresses.class);
+
+	public static final InitialPingAddresses EMPTY = new InitialPingAddresses(Collections.emptyList(), Collections.emptyList());
+
+	private final List<PhysicalAddress> addresses;
+	private final List<String> unresolved;
+
+	/**
+	 * @param addresses The resolved addresses
+	 * @param unresolved Address strings as accepted by
+	 *        {@link HostAddress#HostAddress(String)} whose host name could not
+	 *        be resolved yet
+	 */
+	public InitialPingAddresses(final List<PhysicalAddress> addresses, final List<String> unresolved) {
+		this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+		this.unresolved = Collections.unmodifiableList(new ArrayList<>(unresolved));
+	}
+
+	@Override
+	public PhysicalAddress get(final int index) {
+		return addresses.get(index);
+	}
+
+	@Override
+	public int size() {
+		return addresses.size();
+	}
+
+	/**
+	 * @return The address strings whose host name could not be resolved yet
+	 */
+	public List<String> getUnresolved() {
+		return unresolved;
+	}
+
+	/**
+	 * Update addresses looked up by host name to the addresses currently
+	 * cached by the {@link DnsCache}, and add unresolved entries that can be
+	 * resolved now. Addresses given with IP address are kept as they are.
+	 * Never waits for DNS, expired entries are refreshed in the background
+	 * and used on the next refresh.
+	 * @return The refreshed addresses, or this instance if nothing changed
+	 */
+	public InitialPingAddresses refresh() {
+		List<PhysicalAddress> refreshed = null;
+		for (int i = 0; i < addresses.size(); i++) {
+			final PhysicalAddress addr = addresses.get(i);
+			if (!(addr instanceof HostAddress) || !((HostAddress) addr).isResolvedByName()) {
+				continue;
+			}
+			final HostAddress hostAddress = (HostAddress) addr;
+			final String hostName = hostAddress.getHostName();
+			if (hostName == null) {
+				continue;
+			}
+			final InetAddress resolved = DnsCache.getDefault().getIfPresent(hostName);
+			if (resolved != null && !resolved.equals(hostAddress.getIpAddress())) {
+				LOG.info("Initial ping address {} now resolves to {}", hostAddress, resolved);
+				if (refreshed == null) {
+					refreshed = new ArrayList<>(addresses);
+				}
+				refreshed.set(i, hostAddress.withResolvedIpAddress(resolved));
+			}
+		}
+
+		List<String> stillUnresolved = unresolved;
+		if (!unresolved.isEmpty()) {
+			stillUnresolved = new ArrayList<>(unresolved.size());
+			for (final String addr_port : unresolved) {
+				try {
+					final HostAddress hostAddress = new HostAddress(addr_port, 0);
+					LOG.info("Initial ping address '{}' resolved to {}", addr_port, hostAddress);
+					if (refreshed == null) {
+						refreshed = new ArrayList<>(addresses);
+					}
+					refreshed.add(hostAddress);
+				} catch (final UnknownHostException e) {
+					// Lookup failed or pending, try again next time
+					stillUnresolved.add(addr_port);
+				} catch (final Exception e) {
+					LOG.warn("Ignoring initial ping address '{}': {}", addr_port, e.toString());
+				}
+			}
+		}
+
+		if (refreshed == null && stillUnresolved.size() == unresolved.size()) {
+			return this;
+		}
+		return new InitialPingAddresses(refreshed != null ? refreshed : addresses, stillUnresolved);
+	}
+
+	@Override
+	public String toString() {
+		if (unresolved.isEmpty()) {
+			return addresses.toString();
+		}
+		return addresses + ", unresolved: " + unresolved;
+	}
+}
@@ -1,10 +1,13 @@
 package org.jgroups.protocols.mklinger;
 
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.jgroups.PhysicalAddress;
 import org.jgroups.conf.PropertyConverter;
@@ -19,29 +22,51 @@ public class InitialPingAddressesConverter implements PropertyConverter {
 		return toResolveableInitialPingAddresses(propertyValue);
 	}
 
-	private static List<PhysicalAddress> toResolveableInitialPingAddresses(final String initialPingAddresses) {
+	private static InitialPingAddresses toResolveableInitialPingAddresses(final String initialPingAddresses) {
 		final List<PhysicalAddress> physicalAddresses = new ArrayList<>();
+		final List<String> unresolved = new ArrayList<>();
 
+		// First pass starts all host name lookups without waiting
 		final StringTokenizer st = new StringTokenizer(initialPingAddresses, ",");
 		while (st.hasMoreTokens()) {
 			final String inetSocketAddress = st.nextToken().trim();
 			try {
-				physicalAddresses.add(new HostAddress(inetSocketAddress));
+				physicalAddresses.add(new HostAddress(inetSocketAddress, 0));
+			} catch (final UnknownHostException e) {
+				unresolved.add(inetSocketAddress);
+			} catch (final Exception e) {
+				LOG.warn("Ignoring initial ping address '{}': {}", inetSocketAddress, e.toString());
+			}
+		}
+
+		// Second pass waits for the lookups, bounded in total
+		final List<String> stillUnresolved = new ArrayList<>();
+		final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DnsCache.DEFAULT_RESOLVE_TIMEOUT_MILLIS);
+		for (final String inetSocketAddress : unresolved) {
+			final long timeoutMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+			try {
+				physicalAddresses.add(new HostAddress(inetSocketAddress, timeoutMillis));
+			} catch (final UnknownHostException e) {
+				LOG.warn("Initial ping address '{}' not resolved yet, retrying on discovery: {}", inetSocketAddress, e.toString());
+				stillUnresolved.add(inetSocketAddress);
 			} catch (final Exception e) {
 				LOG.warn("Ignoring initial ping address '{}': {}", inetSocketAddress, e.toString());
 			}
 		}
 
 		LOG.info("Using resolveable initial ping addresses: '{}'", physicalAddresses);
-		return physicalAddresses;
+		return new InitialPingAddresses(physicalAddresses, stillUnresolved);
 	}
 
 
 	@Override
 	public String toString(final Object value) {
-		return ((Collection<?>) value).stream()
+		final Stream<String> unresolved = value instanceof InitialPingAddresses
+				? ((InitialPingAddresses) value).getUnresolved().stream()
+				: Stream.empty();
+		return Stream.concat(((Collection<?>) value).stream()
 				.map(PhysicalAddress.class::cast)
-				.map(PhysicalAddress::printIpAddress)
+				.map(PhysicalAddress::printIpAddress), unresolved)
 				.collect(Collectors.joining(","));
 	}
 }
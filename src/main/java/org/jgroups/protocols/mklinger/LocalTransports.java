@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.jgroups.PhysicalAddress;
+
+/**
+ * Process-local registry of started {@link HTTP} transports by their physical
+ * address. Several transports may share a physical address when they serve
+ * different clusters.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class LocalTransports {
+	private static final ConcurrentMap<PhysicalAddress, Set<HTTP>> TRANSPORTS = new ConcurrentHashMap<>();
+
+	/** No instantiation */
+	private LocalTransports() {}
+
+	static void register(final PhysicalAddress address, final HTTP transport) {
+		TRANSPORTS.computeIfAbsent(address, k -> new CopyOnWriteArraySet<>()).add(transport);
+	}
+
+	static void unregister(final PhysicalAddress address, final HTTP transport) {
+		TRANSPORTS.computeIfPresent(address, (k, transports) -> {
+			transports.remove(transport);
+			return transports.isEmpty() ? null : transports;
+		});
+	}
+
+	/**
+	 * @return The transport for the given physical address and cluster or
+	 *         <code>null</code> if there is none in this JVM
+	 */
+	static HTTP get(final PhysicalAddress address, final String clusterName) {
+		final Set<HTTP> transports = TRANSPORTS.get(address);
+		if (transports == null) {
+			return null;
+		}
+		for (final HTTP transport : transports) {
+			if (Objects.equals(clusterName, transport.getClusterName())) {
+				return transport;
+			}
+		}
+		return null;
+	}
+}
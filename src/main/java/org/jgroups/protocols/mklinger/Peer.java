@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.PhysicalAddress;
+
+/**
+ * Transport state kept by {@link HTTP} for a single remote physical address.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class Peer {
+	private final PhysicalAddress address;
+	private volatile long lastExchangeNanos;
+	private volatile boolean exchanged;
+	private final AtomicBoolean warm = new AtomicBoolean();
+	private volatile URI serviceUrl;
+	private long lastRttNanos = -1;
+	private long smoothedRttNanos = -1;
+	private long rttVariationNanos;
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+	private volatile long pausedUntilNanos;
+	private volatile boolean paused;
+	/** Requests without response yet */
+	private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+	/** Identifies the sequence numbers sent to the peer, changes when the peer state is recreated */
+	private final long epoch = ThreadLocalRandom.current().nextLong();
+	private final AtomicLong sendSeq = new AtomicLong();
+
+	Peer(final PhysicalAddress address) {
+		this.address = address;
+	}
+
+	public PhysicalAddress getAddress() {
+		return address;
+	}
+
+	public URI getServiceUrl() {
+		return serviceUrl;
+	}
+
+	public void setServiceUrl(final URI serviceUrl) {
+		this.serviceUrl = serviceUrl;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The transport sequence number for the next message sent to the peer
+	 */
+	public long nextSendSeq() {
+		return sendSeq.getAndIncrement();
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Stop sending to the peer for the given time, e.g. because it is
+	 * overloaded.
+	 */
+	public void pause(final long millis) {
+		pausedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		paused = true;
+	}
+
+	/**
+	 * @return The remaining milliseconds to not send to the peer or 0 if not
+	 *         paused
+	 */
+	public long getRemainingPauseMillis() {
+		if (!paused) {
+			return 0;
+		}
+		final long remainingNanos = pausedUntilNanos - System.nanoTime();
+		if (remainingNanos <= 0) {
+			paused = false;
+			return 0;
+		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+	}
+
+	public void addInFlight(final CompletableFuture<?> request) {
+		inFlight.add(request);
+	}
+
+	public void removeInFlight(final CompletableFuture<?> request) {
+		inFlight.remove(request);
+	}
+
+	/**
+	 * Cancel all requests without response yet, so their responses are not
+	 * handled any more. Cancelling does not abort the HTTP exchange: The
+	 * client holds the message until the response arrives or the deadline
+	 * passes.
+	 * @param cancelledRequests Incremented for each cancelled request
+	 */
+	public void cancelInFlight(final LongAdder cancelledRequests) {
+		for (final CompletableFuture<?> request : inFlight) {
+			if (request.cancel(true)) {
+				cancelledRequests.increment();
+			}
+			inFlight.remove(request);
+		}
+	}
+
+	/**
+	 * Record a successful exchange with the peer, i.e. a 2xx response to a
+	 * request sent to the peer or a message received from the peer.
+	 */
+	public void touch() {
+		lastExchangeNanos = System.nanoTime();
+		exchanged = true;
+	}
+
+	/**
+	 * @return Milliseconds since the last successful exchange or -1 if there
+	 *         was no successful exchange yet
+	 */
+	public long millisSinceLastExchange() {
+		if (!exchanged) {
+			return -1;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastExchangeNanos);
+	}
+
+	/**
+	 * @return <code>true</code> if the caller should warm up the connection to
+	 *         the peer, <code>false</code> if this was already done
+	 */
+	public boolean startWarmup() {
+		return warm.compareAndSet(false, true);
+	}
+
+	/**
+	 * Add a round trip time measurement. Smoothed RTT and RTT variation are
+	 * calculated like the TCP retransmission timer (RFC 6298). Requests that
+	 * set up a connection must not be measured, see {@link ClientConnections}.
+	 * @param rttNanos The time from request start to response
+	 */
+	public synchronized void addRtt(final long rttNanos) {
+		lastRttNanos = rttNanos;
+		if (smoothedRttNanos == -1) {
+			smoothedRttNanos = rttNanos;
+			rttVariationNanos = rttNanos / 2;
+		} else {
+			rttVariationNanos = (3 * rttVariationNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+			smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+		}
+	}
+
+	/**
+	 * @return The smoothed round trip time in nanoseconds or -1 if unknown
+	 */
+	public synchronized long getSmoothedRttNanos() {
+		return smoothedRttNanos;
+	}
+
+	public synchronized long getRttVariationNanos() {
+		return rttVariationNanos;
+	}
+
+	/**
+	 * @return The retransmission timeout (smoothed RTT plus four times the
+	 *         RTT variation) in nanoseconds or -1 if unknown
+	 */
+	public synchronized long getRetransmissionTimeoutNanos() {
+		if (smoothedRttNanos == -1) {
+			return -1;
+		}
+		return smoothedRttNanos + 4 * rttVariationNanos;
+	}
+
+	public synchronized String printRtt() {
+		if (smoothedRttNanos == -1) {
+			return address + ": unknown";
+		}
+		return String.format(Locale.US, "%s: last=%.2f ms, smoothed=%.2f ms, variation=%.2f ms",
+				address, toMillis(lastRttNanos), toMillis(smoothedRttNanos), toMillis(rttVariationNanos));
+	}
+
+	private static double toMillis(final long nanos) {
+		return ((double) nanos) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return address + " (last exchange: " + millisSinceLastExchange() + " ms ago)";
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.Address;
+
+/**
+ * Bounded queues of serialized messages for logical addresses without known
+ * physical address. Used by {@link HTTP} to hold messages while discovery
+ * runs, instead of dropping them.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class PendingMessages {
+	private final ConcurrentMap<Address, ArrayDeque<byte[]>> queues = new ConcurrentHashMap<>();
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder flushed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Queue a message for the given destination. The message is dropped if
+	 * there are already <code>maxMessages</code> messages queued.
+	 * @return <code>true</code> if there was no queue for the destination, so
+	 *         the caller should start resolving the destination
+	 */
+	public boolean add(final Address dest, final byte[] data, final int maxMessages) {
+		boolean created = false;
+		while (true) {
+			ArrayDeque<byte[]> queue = queues.get(dest);
+			if (queue == null) {
+				final ArrayDeque<byte[]> newQueue = new ArrayDeque<>();
+				queue = queues.putIfAbsent(dest, newQueue);
+				if (queue == null) {
+					queue = newQueue;
+					created = true;
+				}
+			}
+			synchronized (queue) {
+				if (queues.get(dest) != queue) {
+					// removed concurrently, retry with a new queue
+					continue;
+				}
+				if (queue.size() >= maxMessages) {
+					dropped.increment();
+				} else {
+					queue.add(data);
+					queued.increment();
+				}
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Remove all messages queued for the given destination, in the order they
+	 * were queued, to send them.
+	 */
+	public List<byte[]> flush(final Address dest) {
+		final List<byte[]> messages = remove(dest);
+		flushed.add(messages.size());
+		return messages;
+	}
+
+	/**
+	 * Drop all messages queued for the given destination.
+	 * @return The number of dropped messages
+	 */
+	public int drop(final Address dest) {
+		final int count = remove(dest).size();
+		dropped.add(count);
+		return count;
+	}
+
+	/**
+	 * Drop all messages queued for the given destination.
+	 * @return The number of bytes of the dropped messages
+	 */
+	public long purge(final Address dest) {
+		final List<byte[]> messages = remove(dest);
+		dropped.add(messages.size());
+		long purgedBytes = 0;
+		for (final byte[] data : messages) {
+			purgedBytes += data.length;
+		}
+		return purgedBytes;
+	}
+
+	private List<byte[]> remove(final Address dest) {
+		final ArrayDeque<byte[]> queue = queues.remove(dest);
+		if (queue == null) {
+			return Collections.emptyList();
+		}
+		synchronized (queue) {
+			final List<byte[]> messages = new ArrayList<>(queue);
+			queue.clear();
+			return messages;
+		}
+	}
+
+	public void clear() {
+		for (final Address dest : queues.keySet()) {
+			drop(dest);
+		}
+	}
+
+	public int getDestinationCount() {
+		return queues.size();
+	}
+
+	public int getMessageCount() {
+		int count = 0;
+		for (final ArrayDeque<byte[]> queue : queues.values()) {
+			synchronized (queue) {
+				count += queue.size();
+			}
+		}
+		return count;
+	}
+
+	public long getQueued() {
+		return queued.sum();
+	}
+
+	public long getFlushed() {
+		return flushed.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<Address, ArrayDeque<byte[]>> e : queues.entrySet()) {
+			final int size;
+			synchronized (e.getValue()) {
+				size = e.getValue().size();
+			}
+			sb.append(e.getKey()).append(": ").append(size).append(" messages\n");
+		}
+		return sb.toString();
+	}
+}
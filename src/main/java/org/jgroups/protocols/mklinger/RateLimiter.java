@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+
+import de.mklinger.jgroups.http.common.TokenBucket;
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+/**
+ * Limits the rate of outgoing messages in bytes and requests per second,
+ * for all destinations together and per destination. Messages exceeding the
+ * limits are queued per destination and sent in order when the limits allow.
+ * Small messages, usually acknowledgements, retransmission requests and
+ * heartbeats, are never queued, so the protocols keep working while large
+ * messages like state transfers are throttled.
+ * <p>
+ * Messages are passed to the {@link Sender} without holding a lock. Only one
+ * thread at a time sends the large messages of a destination, so they keep
+ * their order.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class RateLimiter {
+	/**
+	 * Sends a message without limit.
+	 */
+	@FunctionalInterface
+	interface Sender {
+		/**
+		 * @param delayed <code>true</code> if the message was queued and is
+		 *        sent by the scheduler or by another thread than the one that
+		 *        submitted it
+		 */
+		void send(IpAddress dest, byte[] data, int attempt, SequenceHeader sequence, boolean delayed);
+	}
+
+	private static final long MIN_DRAIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Sender sender;
+	private final Scheduler scheduler;
+	private final LongSupplier nanoClock;
+	private final TokenBucket bytes;
+	private final TokenBucket requests;
+	private volatile long bytesPerDestination;
+	private volatile long requestsPerDestination;
+	private volatile boolean enabled;
+	private final ConcurrentMap<IpAddress, Destination> destinations = new ConcurrentHashMap<>();
+	private final LongAdder delayed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	private static class QueuedMessage {
+		private final byte[] data;
+		private final int attempt;
+		private final SequenceHeader sequence;
+
+		QueuedMessage(final byte[] data, final int attempt, final SequenceHeader sequence) {
+			this.data = data;
+			this.attempt = attempt;
+			this.sequence = sequence;
+		}
+	}
+
+	private class Destination {
+		private final TokenBucket bytes = new TokenBucket(bytesPerDestination, nanoClock);
+		private final TokenBucket requests = new TokenBucket(requestsPerDestination, nanoClock);
+		private final ArrayDeque<QueuedMessage> queue = new ArrayDeque<>();
+		private long queuedBytes;
+		private boolean drainScheduled;
+		/** A thread is sending large messages, others queue theirs */
+		private boolean sending;
+	}
+
+	RateLimiter(final Sender sender, final Scheduler scheduler) {
+		this(sender, scheduler, System::nanoTime);
+	}
+
+	RateLimiter(final Sender sender, final Scheduler scheduler, final LongSupplier nanoClock) {
+		this.sender = sender;
+		this.scheduler = scheduler;
+		this.nanoClock = nanoClock;
+		this.bytes = new TokenBucket(0, nanoClock);
+		this.requests = new TokenBucket(0, nanoClock);
+	}
+
+	/**
+	 * Set the limits. 0 means no limit.
+	 */
+	public synchronized void setRates(final long bytesPerSecond, final long requestsPerSecond,
+			final long bytesPerSecondPerDestination, final long requestsPerSecondPerDestination) {
+		bytes.setRate(bytesPerSecond);
+		requests.setRate(requestsPerSecond);
+		this.bytesPerDestination = bytesPerSecondPerDestination;
+		this.requestsPerDestination = requestsPerSecondPerDestination;
+		for (final Destination destination : destinations.values()) {
+			destination.bytes.setRate(bytesPerSecondPerDestination);
+			destination.requests.setRate(requestsPerSecondPerDestination);
+		}
+		this.enabled = bytesPerSecond > 0 || requestsPerSecond > 0
+				|| bytesPerSecondPerDestination > 0 || requestsPerSecondPerDestination > 0;
+	}
+
+	/**
+	 * @return <code>false</code> if no limit is set, so messages can be sent
+	 *         without using the rate limiter
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Send a message now, if the limits allow, or queue it to be sent later.
+	 * @param prioritySize Messages up to this size are sent right away
+	 * @param maxQueuedBytes Messages are dropped if the queued messages for
+	 *        the destination would exceed this size
+	 */
+	public void submit(final IpAddress dest, final byte[] data, final int attempt, final SequenceHeader sequence, final int prioritySize,
+			final long maxQueuedBytes) {
+		final Destination destination = destinations.computeIfAbsent(dest, k -> new Destination());
+		if (data.length <= prioritySize) {
+			take(destination, data.length);
+			sender.send(dest, data, attempt, sequence, false);
+			return;
+		}
+		synchronized (destination) {
+			if (destination.queue.isEmpty() && !destination.sending && tryTake(destination, data.length)) {
+				destination.sending = true;
+			} else {
+				if (destination.queuedBytes + data.length > maxQueuedBytes) {
+					dropped.increment();
+					return;
+				}
+				destination.queue.add(new QueuedMessage(data, attempt, sequence));
+				destination.queuedBytes += data.length;
+				delayed.increment();
+				scheduleDrain(dest, destination);
+				return;
+			}
+		}
+		try {
+			sender.send(dest, data, attempt, sequence, false);
+		} finally {
+			// Messages may have been queued meanwhile
+			sendQueued(dest, destination);
+		}
+	}
+
+	private void scheduleDrain(final IpAddress dest, final Destination destination) {
+		if (destination.drainScheduled) {
+			return;
+		}
+		destination.drainScheduled = true;
+		final long delayNanos = Math.max(MIN_DRAIN_DELAY_NANOS, getWaitNanos(destination));
+		scheduler.schedule(() -> drain(dest, destination), delayNanos);
+	}
+
+	private void drain(final IpAddress dest, final Destination destination) {
+		synchronized (destination) {
+			destination.drainScheduled = false;
+			if (destination.sending) {
+				// The sending thread sends the queued messages when done
+				return;
+			}
+			destination.sending = true;
+		}
+		sendQueued(dest, destination);
+	}
+
+	/**
+	 * Send queued messages as long as the limits allow. Must be called by
+	 * the thread that set the sending flag, which is reset when done.
+	 */
+	private void sendQueued(final IpAddress dest, final Destination destination) {
+		while (true) {
+			final QueuedMessage message;
+			synchronized (destination) {
+				if (destination.queue.isEmpty() || !tryTake(destination, destination.queue.peek().data.length)) {
+					stopSending(dest, destination);
+					return;
+				}
+				message = destination.queue.poll();
+				destination.queuedBytes -= message.data.length;
+			}
+			try {
+				sender.send(dest, message.data, message.attempt, message.sequence, true);
+			} catch (final RuntimeException e) {
+				synchronized (destination) {
+					stopSending(dest, destination);
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void stopSending(final IpAddress dest, final Destination destination) {
+		destination.sending = false;
+		if (!destination.queue.isEmpty() && destinations.get(dest) == destination) {
+			scheduleDrain(dest, destination);
+		}
+	}
+
+	private boolean tryTake(final Destination destination, final int length) {
+		if (getWaitNanos(destination) > 0) {
+			return false;
+		}
+		take(destination, length);
+		return true;
+	}
+
+	private void take(final Destination destination, final int length) {
+		bytes.take(length);
+		requests.take(1);
+		destination.bytes.take(length);
+		destination.requests.take(1);
+	}
+
+	private long getWaitNanos(final Destination destination) {
+		return Math.max(Math.max(bytes.getWaitNanos(), requests.getWaitNanos()),
+				Math.max(destination.bytes.getWaitNanos(), destination.requests.getWaitNanos()));
+	}
+
+	/**
+	 * Drop all messages queued for the given destination and forget it.
+	 * @return The number of bytes of the dropped messages
+	 */
+	public long purge(final PhysicalAddress dest) {
+		final Destination destination = destinations.remove(dest);
+		if (destination == null) {
+			return 0;
+		}
+		synchronized (destination) {
+			final long purgedBytes = destination.queuedBytes;
+			dropped.add(destination.queue.size());
+			destination.queue.clear();
+			destination.queuedBytes = 0;
+			return purgedBytes;
+		}
+	}
+
+	public void clear() {
+		for (final IpAddress dest : destinations.keySet()) {
+			purge(dest);
+		}
+	}
+
+	public long getQueuedBytes() {
+		long queuedBytes = 0;
+		for (final Destination destination : destinations.values()) {
+			synchronized (destination) {
+				queuedBytes += destination.queuedBytes;
+			}
+		}
+		return queuedBytes;
+	}
+
+	public long getDelayed() {
+		return delayed.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("all: bytes ").append(bytes).append(", requests ").append(requests).append('\n');
+		for (final Map.Entry<IpAddress, Destination> e : destinations.entrySet()) {
+			final Destination destination = e.getValue();
+			synchronized (destination) {
+				sb.append(e.getKey()).append(": bytes ").append(destination.bytes)
+				.append(", requests ").append(destination.requests)
+				.append(", queued ").append(destination.queue.size()).append(" messages\n");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.Address;
+
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+/**
+ * Restores the send order of messages per sender, using the transport
+ * sequence numbers sent in the {@link SequenceHeader}. Messages arriving
+ * before their predecessors are held back until the predecessors arrived or
+ * until a timeout, so a lost message does not stall its sender for long.
+ * Messages arriving after their successors were delivered are delivered
+ * right away; the protocols above handle them as usual.
+ * <p>
+ * Messages are passed to the receiver without holding the lock of their
+ * sender, one thread at a time per sender, so a slow receiver does not block
+ * threads receiving or timing out messages of the same sender.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class ReorderBuffer {
+	/**
+	 * Receives messages in order.
+	 */
+	@FunctionalInterface
+	interface Receiver {
+		void receive(Address sender, byte[] data, int offset, int length);
+	}
+
+	private final Receiver receiver;
+	private final Scheduler scheduler;
+	private final ConcurrentMap<Address, SenderState> senders = new ConcurrentHashMap<>();
+	private final LongAdder held = new LongAdder();
+	private final LongAdder late = new LongAdder();
+	private final LongAdder gapsSkipped = new LongAdder();
+
+	private static class Message {
+		private final byte[] data;
+		private final int offset;
+		private final int length;
+
+		Message(final byte[] data, final int offset, final int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private static class SenderState {
+		private long epoch;
+		private long nextSeq;
+		private final TreeMap<Long, Message> buffered = new TreeMap<>();
+		/** Messages in order, waiting to be passed to the receiver */
+		private final ArrayDeque<Message> ready = new ArrayDeque<>();
+		/** <code>true</code> while a thread passes ready messages to the receiver */
+		private boolean delivering;
+		/** Incremented whenever nextSeq changes, to detect stale timeouts */
+		private long progress;
+		private boolean timeoutScheduled;
+
+		SenderState(final long epoch, final long nextSeq) {
+			this.epoch = epoch;
+			this.nextSeq = nextSeq;
+		}
+	}
+
+	ReorderBuffer(final Receiver receiver, final Scheduler scheduler) {
+		this.receiver = receiver;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Deliver the message and all buffered messages following it, or buffer
+	 * the message if its predecessor is missing.
+	 * @param timeoutNanos Time to wait for a missing predecessor
+	 * @param maxBuffered Max number of messages held back per sender. If
+	 *        exceeded, missing predecessors are skipped.
+	 */
+	public void receive(final Address sender, final SequenceHeader sequence, final byte[] data, final int offset, final int length,
+			final long timeoutNanos, final int maxBuffered) {
+		// Start with the first message seen, the sender may have sent to us
+		// before we started
+		final SenderState state = senders.computeIfAbsent(sender, k -> new SenderState(sequence.getEpoch(), sequence.getSeq()));
+		synchronized (state) {
+			if (state.epoch != sequence.getEpoch()) {
+				// The sender restarted or forgot us, messages of the old epoch will not be completed
+				deliverBuffered(state);
+				state.epoch = sequence.getEpoch();
+				setNextSeq(state, 0);
+			}
+			final long seq = sequence.getSeq();
+			final Message message = new Message(data, offset, length);
+			if (seq < state.nextSeq) {
+				late.increment();
+				state.ready.add(message);
+			} else if (seq > state.nextSeq) {
+				held.increment();
+				state.buffered.put(seq, message);
+				if (state.buffered.size() > maxBuffered) {
+					skipGap(state);
+				} else {
+					scheduleTimeout(sender, state, timeoutNanos);
+				}
+			} else {
+				state.ready.add(message);
+				setNextSeq(state, seq + 1);
+				deliverContiguous(state);
+				if (!state.buffered.isEmpty()) {
+					scheduleTimeout(sender, state, timeoutNanos);
+				}
+			}
+		}
+		deliverReady(sender, state);
+	}
+
+	private void scheduleTimeout(final Address sender, final SenderState state, final long timeoutNanos) {
+		if (state.timeoutScheduled) {
+			return;
+		}
+		state.timeoutScheduled = true;
+		final long progress = state.progress;
+		scheduler.schedule(() -> onTimeout(sender, state, progress, timeoutNanos), timeoutNanos);
+	}
+
+	private void onTimeout(final Address sender, final SenderState state, final long progress, final long timeoutNanos) {
+		synchronized (state) {
+			state.timeoutScheduled = false;
+			if (state.buffered.isEmpty()) {
+				return;
+			}
+			if (state.progress == progress) {
+				// No progress while waiting, give up on the missing messages
+				skipGap(state);
+			}
+			if (!state.buffered.isEmpty() && senders.get(sender) == state) {
+				scheduleTimeout(sender, state, timeoutNanos);
+			}
+		}
+		deliverReady(sender, state);
+	}
+
+	private void skipGap(final SenderState state) {
+		gapsSkipped.increment();
+		setNextSeq(state, state.buffered.firstKey());
+		deliverContiguous(state);
+	}
+
+	private void deliverContiguous(final SenderState state) {
+		Map.Entry<Long, Message> next;
+		while ((next = state.buffered.firstEntry()) != null && next.getKey() == state.nextSeq) {
+			state.buffered.pollFirstEntry();
+			state.ready.add(next.getValue());
+			setNextSeq(state, state.nextSeq + 1);
+		}
+	}
+
+	private void deliverBuffered(final SenderState state) {
+		Map.Entry<Long, Message> next;
+		while ((next = state.buffered.pollFirstEntry()) != null) {
+			state.ready.add(next.getValue());
+		}
+	}
+
+	/**
+	 * Pass the ready messages to the receiver, unless another thread already
+	 * does. Must be called without holding the lock of the sender.
+	 */
+	private void deliverReady(final Address sender, final SenderState state) {
+		synchronized (state) {
+			if (state.delivering) {
+				// The delivering thread picks up our messages
+				return;
+			}
+			state.delivering = true;
+		}
+		boolean done = false;
+		try {
+			while (true) {
+				final Message message;
+				synchronized (state) {
+					message = state.ready.poll();
+					if (message == null) {
+						state.delivering = false;
+						done = true;
+						return;
+					}
+				}
+				receiver.receive(sender, message.data, message.offset, message.length);
+			}
+		} finally {
+			if (!done) {
+				synchronized (state) {
+					state.delivering = false;
+				}
+			}
+		}
+	}
+
+	private static void setNextSeq(final SenderState state, final long nextSeq) {
+		state.nextSeq = nextSeq;
+		state.progress++;
+	}
+
+	/**
+	 * Deliver all messages held back for the given sender and forget it.
+	 */
+	public void remove(final Address sender) {
+		final SenderState state = senders.remove(sender);
+		if (state != null) {
+			synchronized (state) {
+				deliverBuffered(state);
+			}
+			deliverReady(sender, state);
+		}
+	}
+
+	public void clear() {
+		senders.clear();
+	}
+
+	public int getBuffered() {
+		int count = 0;
+		for (final SenderState state : senders.values()) {
+			synchronized (state) {
+				count += state.buffered.size();
+			}
+		}
+		return count;
+	}
+
+	public long getHeld() {
+		return held.sum();
+	}
+
+	public long getLate() {
+		return late.sum();
+	}
+
+	public long getGapsSkipped() {
+		return gapsSkipped.sum();
+	}
+}
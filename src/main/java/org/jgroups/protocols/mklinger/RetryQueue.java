@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.PhysicalAddress;
+
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+/**
+ * Bounded queues of serialized messages whose sending failed with a
+ * transient error or was paused, per physical destination. Used by
+ * {@link HTTP} to resend these messages after a backoff or pause, instead of
+ * leaving the recovery to retransmission requests of the reliability
+ * protocols.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class RetryQueue {
+	private final ConcurrentMap<PhysicalAddress, Queue> queues = new ConcurrentHashMap<>();
+	private final AtomicLong bytes = new AtomicLong();
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder retried = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * A message to send again.
+	 */
+	static class Retry {
+		private final byte[] data;
+		private final int attempt;
+		private final SequenceHeader sequence;
+
+		Retry(final byte[] data, final int attempt, final SequenceHeader sequence) {
+			this.data = data;
+			this.attempt = attempt;
+			this.sequence = sequence;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * @return The number of failed attempts to send the message
+		 */
+		public int getAttempt() {
+			return attempt;
+		}
+
+		/**
+		 * @return The sequence number of the first attempt or
+		 *         <code>null</code> if none
+		 */
+		public SequenceHeader getSequence() {
+			return sequence;
+		}
+	}
+
+	private static class Queue {
+		private final ArrayDeque<Retry> retries = new ArrayDeque<>();
+		private long bytes;
+	}
+
+	/**
+	 * Queue a message for the given destination. The message is dropped if
+	 * the queued messages for the destination would exceed
+	 * <code>maxBytes</code> or the queued messages for all destinations would
+	 * exceed <code>maxTotalBytes</code>. A message for a destination without
+	 * queued messages is only limited by <code>maxTotalBytes</code>, so
+	 * messages larger than <code>maxBytes</code> can be queued.
+	 * @param attempt The number of failed attempts to send the message
+	 * @param sequence The sequence number to send the message with, may be
+	 *        <code>null</code>
+	 * @return <code>true</code> if there was no queue for the destination, so
+	 *         the caller should schedule the retry
+	 */
+	public boolean add(final PhysicalAddress dest, final byte[] data, final int attempt, final SequenceHeader sequence,
+			final long maxBytes, final long maxTotalBytes) {
+		boolean created = false;
+		while (true) {
+			Queue queue = queues.get(dest);
+			if (queue == null) {
+				final Queue newQueue = new Queue();
+				queue = queues.putIfAbsent(dest, newQueue);
+				if (queue == null) {
+					queue = newQueue;
+					created = true;
+				}
+			}
+			synchronized (queue) {
+				if (queues.get(dest) != queue) {
+					// removed concurrently, retry with a new queue
+					continue;
+				}
+				if ((queue.bytes > 0 && queue.bytes + data.length > maxBytes) || !reserve(data.length, maxTotalBytes)) {
+					dropped.increment();
+				} else {
+					queue.retries.add(new Retry(data, attempt, sequence));
+					queue.bytes += data.length;
+					queued.increment();
+				}
+				if (created && queue.retries.isEmpty()) {
+					// nothing to schedule
+					queues.remove(dest, queue);
+					return false;
+				}
+				return created;
+			}
+		}
+	}
+
+	private boolean reserve(final int length, final long maxTotalBytes) {
+		if (bytes.addAndGet(length) > maxTotalBytes) {
+			bytes.addAndGet(-length);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all messages queued for the given destination, in the order they
+	 * were queued, to send them again.
+	 */
+	public List<Retry> flush(final PhysicalAddress dest) {
+		final List<Retry> messages = remove(dest);
+		retried.add(messages.size());
+		return messages;
+	}
+
+	/**
+	 * Drop all messages queued for the given destination.
+	 * @return The number of dropped messages
+	 */
+	public int drop(final PhysicalAddress dest) {
+		final int count = remove(dest).size();
+		dropped.add(count);
+		return count;
+	}
+
+	/**
+	 * Drop all messages queued for the given destination.
+	 * @return The number of bytes of the dropped messages
+	 */
+	public long purge(final PhysicalAddress dest) {
+		final List<Retry> messages = remove(dest);
+		dropped.add(messages.size());
+		long purgedBytes = 0;
+		for (final Retry retry : messages) {
+			purgedBytes += retry.getData().length;
+		}
+		return purgedBytes;
+	}
+
+	/**
+	 * Count a message that is not queued, e.g. because it failed too often.
+	 */
+	public void dropped() {
+		dropped.increment();
+	}
+
+	private List<Retry> remove(final PhysicalAddress dest) {
+		final Queue queue = queues.remove(dest);
+		if (queue == null) {
+			return Collections.emptyList();
+		}
+		synchronized (queue) {
+			final List<Retry> messages = new ArrayList<>(queue.retries);
+			bytes.addAndGet(-queue.bytes);
+			queue.retries.clear();
+			queue.bytes = 0;
+			return messages;
+		}
+	}
+
+	public void clear() {
+		for (final PhysicalAddress dest : queues.keySet()) {
+			drop(dest);
+		}
+	}
+
+	/**
+	 * Get the delay before the next attempt: Exponential backoff with
+	 * jitter, so senders failing at the same time do not retry at the same
+	 * time. The delay is between half and the full backoff.
+	 * @param attempt The number of failed attempts, starting with 1
+	 */
+	public static long backoffMillis(final int attempt, final long baseMillis, final long maxMillis) {
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		final long backoff = Math.min(maxMillis, baseMillis << shift);
+		final long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getQueued() {
+		return queued.sum();
+	}
+
+	public long getRetried() {
+		return retried.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<PhysicalAddress, Queue> e : queues.entrySet()) {
+			final Queue queue = e.getValue();
+			synchronized (queue) {
+				sb.append(e.getKey()).append(": ").append(queue.retries.size()).append(" messages, ")
+				.append(queue.bytes).append(" bytes\n");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+/**
+ * Runs a task after a delay. Usually backed by the timer of the transport.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@FunctionalInterface
+interface Scheduler {
+	void schedule(Runnable task, long delayNanos);
+}
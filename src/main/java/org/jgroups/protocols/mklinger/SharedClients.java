@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.jgroups.http.common.Closeables;
+
+/**
+ * Process-wide HTTP clients, shared by {@link HTTP} transports with the same
+ * client settings. Sharing a client shares its connections, so several
+ * channels talking to the same nodes use one HTTP/2 connection per node.
+ * Clients are closed when the last transport using them releases them.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+class SharedClients {
+	private static final Map<String, SharedClient> CLIENTS = new HashMap<>();
+
+	/** No instantiation */
+	private SharedClients() {}
+
+	/**
+	 * Get the client for the given key, creating it if needed. Each call
+	 * must be followed by a call to {@link #release(String)}.
+	 */
+	static synchronized HttpClient acquire(final String key, final Supplier<HttpClient> clientSupplier) {
+		SharedClient sharedClient = CLIENTS.get(key);
+		if (sharedClient == null) {
+			sharedClient = new SharedClient(clientSupplier.get());
+			CLIENTS.put(key, sharedClient);
+		}
+		sharedClient.references++;
+		return sharedClient.client;
+	}
+
+	/**
+	 * Get the connections of the client for the given key, which must have
+	 * been acquired.
+	 */
+	static synchronized ClientConnections getConnections(final String key) {
+		return CLIENTS.get(key).connections;
+	}
+
+	static synchronized void release(final String key) {
+		final SharedClient sharedClient = CLIENTS.get(key);
+		if (sharedClient == null) {
+			return;
+		}
+		sharedClient.references--;
+		if (sharedClient.references <= 0) {
+			CLIENTS.remove(key);
+			Closeables.closeUnchecked(sharedClient.client);
+		}
+	}
+
+	private static class SharedClient {
+		private final HttpClient client;
+		private final ClientConnections connections = new ClientConnections();
+		private int references;
+
+		SharedClient(final HttpClient client) {
+			this.client = client;
+		}
+	}
+}
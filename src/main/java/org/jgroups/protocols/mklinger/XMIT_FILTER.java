@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-present mklinger GmbH - http://www.mklinger.de
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jgroups.protocols.mklinger;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.protocols.NoBundler;
+import org.jgroups.stack.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops retransmissions of unicast messages whose delivery the {@link HTTP}
+ * transport confirmed. UNICAST3 sends the last message to a member again
+ * while its ack is outstanding, although the destination transport already
+ * answered the request carrying it with a 2xx status. Placed between the
+ * transport and UNICAST3, this protocol remembers the last confirmed message
+ * per member and drops it once when it is passed down again.
+ * <p>
+ * Requires <code>confirm_delivery="true"</code> and
+ * <code>bundler_type="no-bundler"</code> on the transport, so confirmations
+ * name the message. A confirmed message can still be lost above the
+ * transport of the destination, e.g. if its thread pool rejects it. Only the
+ * first retransmission after a confirmation is dropped, so such a loss is
+ * recovered one retransmission later.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@MBean(description = "Drops retransmissions of messages confirmed by the HTTP transport")
+public class XMIT_FILTER extends Protocol {
+	private static final Logger LOG = LoggerFactory.getLogger(XMIT_FILTER.class);
+
+	/** The last confirmed message per member, not keeping it from being collected */
+	private final ConcurrentMap<Address, WeakReference<Message>> confirmed = new ConcurrentHashMap<>();
+
+	private final LongAdder confirmations = new LongAdder();
+	private final LongAdder droppedRetransmissions = new LongAdder();
+
+	@Override
+	public void start() throws Exception {
+		super.start();
+		if (!(getTransport() instanceof HTTP)) {
+			throw new IllegalStateException("XMIT_FILTER requires the HTTP transport");
+		}
+		final HTTP transport = (HTTP) getTransport();
+		if (!transport.isConfirmDelivery() || !(transport.getBundler() instanceof NoBundler)) {
+			LOG.warn("XMIT_FILTER needs confirm_delivery=\"true\" and bundler_type=\"no-bundler\" on the transport, "
+					+ "no retransmissions are dropped");
+		}
+	}
+
+	@Override
+	public void stop() {
+		confirmed.clear();
+		super.stop();
+	}
+
+	@Override
+	public Object down(final Event evt) {
+		if (evt.getType() == Event.VIEW_CHANGE) {
+			final View view = evt.getArg();
+			confirmed.keySet().retainAll(view.getMembers());
+		}
+		return down_prot.down(evt);
+	}
+
+	@Override
+	public Object down(final Message msg) {
+		final Address dest = msg.getDest();
+		if (dest != null) {
+			final WeakReference<Message> ref = confirmed.get(dest);
+			if (ref != null && ref.get() == msg && confirmed.remove(dest, ref)) {
+				LOG.debug("Dropping retransmission of a confirmed message to {}", dest);
+				droppedRetransmissions.increment();
+				return null;
+			}
+		}
+		return down_prot.down(msg);
+	}
+
+	@Override
+	public Object up(final Event evt) {
+		if (evt.getType() == HTTP.DELIVERY_CONFIRMED) {
+			final DeliveryConfirmation confirmation = evt.getArg();
+			final Message msg = confirmation.getMessage();
+			if (msg != null && msg.getDest() != null) {
+				confirmed.put(msg.getDest(), new WeakReference<>(msg));
+				confirmations.increment();
+			}
+			// Consumed, protocols above do not handle confirmations
+			return null;
+		}
+		return up_prot.up(evt);
+	}
+
+	@ManagedAttribute(description = "Number of confirmations of unicast messages received from the transport")
+	public long getConfirmations() {
+		return confirmations.sum();
+	}
+
+	@ManagedAttribute(description = "Number of retransmissions of confirmed messages dropped")
+	public long getDroppedRetransmissions() {
+		return droppedRetransmissions.sum();
+	}
+}
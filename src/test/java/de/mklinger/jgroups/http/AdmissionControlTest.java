@@ -0,0 +1,60 @@
+package de.mklinger.jgroups.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.server.AdmissionControl;
+
+public class AdmissionControlTest {
+	@Test
+	public void testConcurrentRequests() {
+		final AdmissionControl admissionControl = new AdmissionControl(2, 0);
+		Assert.assertTrue(admissionControl.tryAcquire(10));
+		Assert.assertTrue(admissionControl.tryAcquire(10));
+		Assert.assertFalse(admissionControl.tryAcquire(10));
+		Assert.assertEquals(2, admissionControl.getRequests());
+		Assert.assertEquals(20, admissionControl.getBufferedBytes());
+		Assert.assertEquals(1, admissionControl.getRejected());
+
+		admissionControl.release(10);
+		Assert.assertTrue(admissionControl.tryAcquire(10));
+	}
+
+	@Test
+	public void testBufferedBytes() {
+		final AdmissionControl admissionControl = new AdmissionControl(0, 100);
+		Assert.assertTrue(admissionControl.tryAcquire(60));
+		Assert.assertFalse(admissionControl.tryAcquire(60));
+		Assert.assertTrue(admissionControl.tryAcquire(40));
+		Assert.assertEquals(100, admissionControl.getBufferedBytes());
+		Assert.assertEquals(1, admissionControl.getRejected());
+	}
+
+	@Test
+	public void testSingleLargeRequestIsAdmitted() {
+		final AdmissionControl admissionControl = new AdmissionControl(0, 100);
+		Assert.assertTrue(admissionControl.tryAcquire(1000));
+		Assert.assertFalse(admissionControl.tryAcquire(1));
+		admissionControl.release(1000);
+		Assert.assertEquals(0, admissionControl.getRequests());
+		Assert.assertEquals(0, admissionControl.getBufferedBytes());
+		Assert.assertTrue(admissionControl.tryAcquire(1));
+	}
+
+	@Test
+	public void testUnlimited() {
+		final AdmissionControl admissionControl = new AdmissionControl(0, 0);
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(admissionControl.tryAcquire(1024 * 1024));
+		}
+		Assert.assertEquals(0, admissionControl.getRejected());
+	}
+
+	@Test
+	public void testRejectedForOtherReason() {
+		final AdmissionControl admissionControl = new AdmissionControl(1, 0);
+		admissionControl.rejected();
+		Assert.assertEquals(1, admissionControl.getRejected());
+		Assert.assertEquals(0, admissionControl.getRequests());
+	}
+}
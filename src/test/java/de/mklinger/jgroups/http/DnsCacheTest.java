@@ -0,0 +1,160 @@
+package de.mklinger.jgroups.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgroups.protocols.mklinger.DnsCache;
+import org.jgroups.protocols.mklinger.HostAddress;
+import org.jgroups.protocols.mklinger.HostAddresses;
+import org.jgroups.protocols.mklinger.HostResolver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DnsCacheTest {
+	private final Map<String, InetAddress> hosts = new HashMap<>();
+	private final AtomicInteger lookups = new AtomicInteger();
+	private final HostResolver resolver = host -> {
+		lookups.incrementAndGet();
+		final InetAddress address = hosts.get(host);
+		if (address == null) {
+			throw new UnknownHostException(host);
+		}
+		return address;
+	};
+	private final Queue<Runnable> tasks = new ArrayDeque<>();
+	private final Executor manualExecutor = tasks::add;
+	private final AtomicLong clock = new AtomicLong();
+	private DnsCache previousDefault;
+
+	@Before
+	public void setUp() throws Exception {
+		hosts.put("node1", InetAddress.getByAddress("node1", new byte[] { 10, 0, 0, 1 }));
+		previousDefault = DnsCache.getDefault();
+	}
+
+	@After
+	public void tearDown() {
+		DnsCache.setDefault(previousDefault);
+		HostAddresses.clear();
+	}
+
+	private DnsCache newCache(final Executor executor) {
+		final DnsCache cache = new DnsCache(resolver, executor, clock::get);
+		cache.setTtlMillis(1000);
+		cache.setNegativeTtlMillis(100);
+		return cache;
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private void advanceMillis(final long millis) {
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	@Test
+	public void testMissDoesNotWait() throws Exception {
+		final DnsCache cache = newCache(manualExecutor);
+		Assert.assertNull(cache.getIfPresent("node1"));
+		Assert.assertNull(cache.getIfPresent("node1"));
+		Assert.assertEquals(1, tasks.size());
+		runTasks();
+		Assert.assertEquals(hosts.get("node1"), cache.getIfPresent("node1"));
+		Assert.assertEquals(1, lookups.get());
+		Assert.assertTrue(tasks.isEmpty());
+	}
+
+	@Test
+	public void testExpiredEntryUsedWhileRefreshing() throws Exception {
+		final DnsCache cache = newCache(manualExecutor);
+		cache.getIfPresent("node1");
+		runTasks();
+		final InetAddress oldAddress = hosts.get("node1");
+		final InetAddress newAddress = InetAddress.getByAddress("node1", new byte[] { 10, 0, 0, 2 });
+		hosts.put("node1", newAddress);
+
+		advanceMillis(999);
+		Assert.assertEquals(oldAddress, cache.getIfPresent("node1"));
+		Assert.assertTrue(tasks.isEmpty());
+
+		advanceMillis(1);
+		Assert.assertEquals(oldAddress, cache.getIfPresent("node1"));
+		Assert.assertEquals(oldAddress, cache.resolve("node1", 0));
+		Assert.assertEquals(1, tasks.size());
+		runTasks();
+		Assert.assertEquals(newAddress, cache.getIfPresent("node1"));
+		Assert.assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void testNegativeCaching() throws Exception {
+		final DnsCache cache = newCache(manualExecutor);
+		Assert.assertNull(cache.getIfPresent("unknown"));
+		runTasks();
+		try {
+			cache.resolve("unknown", 0);
+			Assert.fail("Expected UnknownHostException");
+		} catch (final UnknownHostException e) {
+			// expected
+		}
+		Assert.assertNull(cache.getIfPresent("unknown"));
+		Assert.assertTrue(tasks.isEmpty());
+		Assert.assertEquals(1, lookups.get());
+
+		advanceMillis(100);
+		Assert.assertNull(cache.getIfPresent("unknown"));
+		Assert.assertEquals(1, tasks.size());
+		runTasks();
+		Assert.assertEquals(2, lookups.get());
+		Assert.assertEquals(2, cache.getFailures());
+	}
+
+	@Test
+	public void testResolveWaitsUpToTimeout() throws Exception {
+		Assert.assertEquals(hosts.get("node1"), newCache(Runnable::run).resolve("node1", 1000));
+
+		final DnsCache cache = newCache(manualExecutor);
+		try {
+			cache.resolve("node1", 10);
+			Assert.fail("Expected UnknownHostException");
+		} catch (final UnknownHostException e) {
+			// expected
+		}
+		runTasks();
+		Assert.assertEquals(hosts.get("node1"), cache.resolve("node1", 10));
+	}
+
+	@Test
+	public void testHostAddressesDoNotWaitForDns() throws Exception {
+		DnsCache.setDefault(newCache(manualExecutor));
+		try {
+			HostAddresses.valueOf("node1:7800");
+			Assert.fail("Expected UnknownHostException");
+		} catch (final UnknownHostException e) {
+			// expected
+		}
+		runTasks();
+		final HostAddress address = HostAddresses.valueOf("node1:7800");
+		Assert.assertEquals("node1", address.getHostName());
+		Assert.assertEquals(hosts.get("node1"), address.getIpAddress());
+		Assert.assertEquals(7800, address.getPort());
+
+		// IP literals never need a lookup
+		Assert.assertEquals(7801, HostAddresses.valueOf("node2/10.0.0.2:7801").getPort());
+		Assert.assertEquals(1, lookups.get());
+	}
+}
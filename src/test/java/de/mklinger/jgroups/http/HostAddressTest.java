@@ -1,6 +1,13 @@
 package de.mklinger.jgroups.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+
 import org.jgroups.protocols.mklinger.HostAddress;
+import org.jgroups.protocols.mklinger.HostAddresses;
 import org.jgroups.protocols.mklinger.InetAddresses;
 import org.junit.Assert;
 import org.junit.Test;
@@ -35,4 +42,112 @@ public class HostAddressTest {
 		Assert.assertArrayEquals(InetAddresses.ipStringToBytes("99.88.77.66"), localhost.getIpAddress().getAddress());
 		Assert.assertEquals(123, localhost.getPort());
 	}
+
+	@Test
+	public void testCompactRoundTrip() throws Exception {
+		assertRoundTrip(compact(new HostAddress("localhost/99.88.77.66:123")));
+	}
+
+	@Test
+	public void testCompactRoundTripWithoutHostName() throws Exception {
+		assertRoundTrip(compact(new HostAddress("99.88.77.66:123")));
+	}
+
+	@Test
+	public void testCompactRoundTripIpv6() throws Exception {
+		assertRoundTrip(compact(new HostAddress("host.example.com/2001:db8::1:65535")));
+	}
+
+	@Test
+	public void testCompactOmitsHostNameEqualToIp() throws Exception {
+		final HostAddress address = new HostAddress(InetAddress.getByAddress("99.88.77.66", new byte[] { 99, 88, 77, 66 }), 123);
+		final HostAddress read = assertRoundTrip(compact(address));
+		Assert.assertNull(read.getHostName());
+	}
+
+	@Test
+	public void testCompactSmallerThanLegacy() throws Exception {
+		final HostAddress address = new HostAddress("localhost/99.88.77.66:123");
+		final int legacySize = toBytes(address).length;
+		Assert.assertTrue(toBytes(compact(address)).length < legacySize);
+	}
+
+	@Test
+	public void testLegacyRoundTrip() throws Exception {
+		final HostAddress read = assertRoundTrip(new HostAddress("localhost/99.88.77.66:123"));
+		Assert.assertFalse(read.isCompactEncoding());
+		assertRoundTrip(new HostAddress("host.example.com/2001:db8::1:65535"));
+	}
+
+	@Test
+	public void testLegacyByDefault() throws Exception {
+		final HostAddress address = new HostAddress("localhost/99.88.77.66:123");
+		Assert.assertFalse(address.isCompactEncoding());
+		// The legacy encoding starts with the 4 byte host name length
+		Assert.assertEquals(0, toBytes(address)[0]);
+	}
+
+	@Test
+	public void testKeepsEncodingRead() throws Exception {
+		final HostAddress read = fromBytes(toBytes(compact(new HostAddress("localhost/99.88.77.66:123"))));
+		Assert.assertTrue(read.isCompactEncoding());
+		Assert.assertTrue(read.copy().isCompactEncoding());
+	}
+
+	@Test
+	public void testReadLegacy() throws Exception {
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bout);
+		out.writeInt("localhost".length());
+		out.writeChars("localhost");
+		out.writeByte(4);
+		out.write(new byte[] { 99, 88, 77, 66 });
+		out.writeShort(123);
+		out.flush();
+
+		final HostAddress read = fromBytes(bout.toByteArray());
+		Assert.assertEquals("localhost", read.getHostName());
+		Assert.assertArrayEquals(new byte[] { 99, 88, 77, 66 }, read.getIpAddress().getAddress());
+		Assert.assertEquals(123, read.getPort());
+	}
+
+	@Test
+	public void testInterned() throws Exception {
+		final HostAddress address = HostAddresses.valueOf("localhost/99.88.77.66:123");
+		Assert.assertSame(address, HostAddresses.valueOf("localhost/99.88.77.66:123"));
+		Assert.assertSame(address, HostAddresses.intern(new HostAddress("localhost/99.88.77.66:123")));
+		Assert.assertNotSame(address, HostAddresses.valueOf("99.88.77.66:123"));
+		Assert.assertNotSame(address, HostAddresses.valueOf("localhost/99.88.77.66:124"));
+	}
+
+	private static HostAddress compact(final HostAddress address) {
+		address.setCompactEncoding(true);
+		return address;
+	}
+
+	private static HostAddress assertRoundTrip(final HostAddress address) throws Exception {
+		final byte[] bytes = toBytes(address);
+		Assert.assertEquals(address.serializedSize(), bytes.length);
+		final HostAddress read = fromBytes(bytes);
+		Assert.assertEquals(address, read);
+		Assert.assertEquals(address.getPort(), read.getPort());
+		if (address.getHostName() != null && !address.getHostName().equals(address.getIpAddress().getHostAddress())) {
+			Assert.assertEquals(address.getHostName(), read.getHostName());
+		}
+		return read;
+	}
+
+	private static byte[] toBytes(final HostAddress address) throws Exception {
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bout);
+		address.writeTo(out);
+		out.flush();
+		return bout.toByteArray();
+	}
+
+	private static HostAddress fromBytes(final byte[] bytes) throws Exception {
+		final HostAddress address = new HostAddress();
+		address.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+		return address;
+	}
 }
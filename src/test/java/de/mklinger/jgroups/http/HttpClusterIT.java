@@ -16,8 +16,16 @@
 package de.mklinger.jgroups.http;
 
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -26,11 +34,23 @@ import java.util.function.BooleanSupplier;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
+import org.jgroups.protocols.mklinger.HTTP;
+import org.jgroups.protocols.mklinger.XMIT_FILTER;
+import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.BodyProviders;
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.jgroups.http.client.DefaultClientFactory;
+import de.mklinger.jgroups.http.server.HttpReceiver;
 import de.mklinger.jgroups.http.server.JGroupsServlet;
+import de.mklinger.jgroups.http.server.SenderHeader;
+import de.mklinger.jgroups.http.server.jetty.EmbeddedServer;
+import de.mklinger.jgroups.http.server.jetty.ServerConstants;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de - klingerm
@@ -74,7 +94,251 @@ public class HttpClusterIT {
 		}
 	}
 
-	private static void initServlet(final JettyHttpServerImpl server, final JettyHttpServerImpl otherServer) {
+	/**
+	 * With http-large.xml, messages are sent in fragments of 8M, which the
+	 * servlet accepts without explicit maxContentSize.
+	 */
+	@Test
+	public void testLargeMessages() throws Exception {
+		final List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+		try (final JettyHttpServerImpl server1 = new JettyHttpServerImpl("localhost", FreePort.get(8453), 100);
+				final JettyHttpServerImpl server2 = new JettyHttpServerImpl("localhost", FreePort.get(8454), 100)) {
+			initServlet(server1, server2).setInitParameter("baseConfigLocation", "classpath:http-large.xml");
+			initServlet(server2, server1).setInitParameter("baseConfigLocation", "classpath:http-large.xml");
+			server1.start();
+			server2.start();
+			final JChannel channel1 = getChannel(server1);
+			final JChannel channel2 = getChannel(server2);
+			channel2.setReceiver(message -> received.add(message.getBuffer()));
+			waitForViewSize(channel1, 2);
+			waitForViewSize(channel2, 2);
+			final HTTP transport = (HTTP) channel1.getProtocolStack().getTransport();
+
+			final byte[] data = new byte[20 * 1024 * 1024];
+			new Random(1).nextBytes(data);
+			channel1.send(new Message(channel2.getAddress(), data));
+			waitFor(() -> !received.isEmpty(), "large message");
+			Assert.assertArrayEquals(data, received.get(0));
+			Assert.assertEquals(0, transport.getRejectedTooLarge());
+		}
+	}
+
+	/**
+	 * With http-reliable.xml, unicast messages are confirmed individually, so
+	 * XMIT_FILTER can drop retransmissions of delivered messages.
+	 */
+	@Test
+	public void testReliableStack() throws Exception {
+		final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+		try (final JettyHttpServerImpl server1 = new JettyHttpServerImpl("localhost", FreePort.get(8455), 100);
+				final JettyHttpServerImpl server2 = new JettyHttpServerImpl("localhost", FreePort.get(8456), 100)) {
+			initServlet(server1, server2).setInitParameter("baseConfigLocation", "classpath:http-reliable.xml");
+			initServlet(server2, server1).setInitParameter("baseConfigLocation", "classpath:http-reliable.xml");
+			server1.start();
+			server2.start();
+			final JChannel channel1 = getChannel(server1);
+			final JChannel channel2 = getChannel(server2);
+			channel2.setReceiver(message -> received.add(message.getObject()));
+			waitForViewSize(channel1, 2);
+			waitForViewSize(channel2, 2);
+
+			final List<Object> sent = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				sent.add("message " + i);
+				channel1.send(new Message(channel2.getAddress(), "message " + i));
+			}
+			waitFor(() -> received.size() == sent.size(), "all messages");
+			Assert.assertEquals(sent, received);
+
+			final XMIT_FILTER filter = channel1.getProtocolStack().findProtocol(XMIT_FILTER.class);
+			waitFor(() -> filter.getConfirmations() >= sent.size(), "confirmations");
+		}
+	}
+
+	/**
+	 * A message exceeding the receive limit of the servlet is rejected with
+	 * status 413, which does not count against the destination.
+	 */
+	@Test
+	public void testServletRejectsTooLarge() throws Exception {
+		try (final JettyHttpServerImpl server1 = new JettyHttpServerImpl("localhost", FreePort.get(8451), 100);
+				final JettyHttpServerImpl server2 = new JettyHttpServerImpl("localhost", FreePort.get(8452), 100)) {
+			initServlet(server1, server2).setInitParameter("maxContentSize", "8k");
+			initServlet(server2, server1).setInitParameter("maxContentSize", "8k");
+			server1.start();
+			server2.start();
+			final JChannel channel1 = getChannel(server1);
+			final JChannel channel2 = getChannel(server2);
+			waitForViewSize(channel1, 2);
+			waitForViewSize(channel2, 2);
+			final HTTP transport = (HTTP) channel1.getProtocolStack().getTransport();
+
+			channel1.send(new Message(channel2.getAddress(), new byte[16 * 1024]));
+			waitFor(() -> transport.getRejectedTooLarge() > 0, "rejected message");
+			Assert.assertFalse(transport.isCircuitOpen(channel2.getAddress()));
+		}
+	}
+
+	/**
+	 * Cluster of nodes receiving with embedded servers instead of a servlet
+	 * container.
+	 */
+	@Test
+	public void testEmbeddedServer() throws Exception {
+		final Set<Object> received = Collections.synchronizedSet(new HashSet<>());
+		final int port1 = FreePort.get(8445);
+		final int port2 = FreePort.get(8446);
+
+		try (final JChannel channel1 = newEmbeddedServerChannel(port1, port2)) {
+			channel1.setReceiver(message -> received.add(message.getObject()));
+			channel1.connect("embedded");
+			waitForViewSize(channel1, 1);
+
+			try (final JChannel channel2 = newEmbeddedServerChannel(port2, port1)) {
+				channel2.setReceiver(message -> received.add(message.getObject()));
+				channel2.connect("embedded");
+
+				waitForViewSize(channel1, 2);
+				waitForViewSize(channel2, 2);
+
+				channel1.send(new Message(null, "message from channel1"));
+				channel2.send(new Message(null, "message from channel2"));
+
+				waitFor(() -> received.contains("message from channel1"), "message from channel1");
+				waitFor(() -> received.contains("message from channel2"), "message from channel2");
+			}
+
+			waitForViewSize(channel1, 1);
+		}
+	}
+
+	/**
+	 * An empty external_path serves the root path.
+	 */
+	@Test
+	public void testEmbeddedServerRootPath() throws Exception {
+		final Set<Object> received = Collections.synchronizedSet(new HashSet<>());
+		final int port1 = FreePort.get(8449);
+		final int port2 = FreePort.get(8450);
+		final Map<String, String> rootPath = new HashMap<>();
+		rootPath.put("mklinger.HTTP.external_path", "");
+
+		try (final JChannel channel1 = newEmbeddedServerChannel(port1, port2, rootPath)) {
+			channel1.connect("root");
+			waitForViewSize(channel1, 1);
+
+			try (final JChannel channel2 = newEmbeddedServerChannel(port2, port1, rootPath)) {
+				channel2.setReceiver(message -> received.add(message.getObject()));
+				channel2.connect("root");
+
+				waitForViewSize(channel1, 2);
+				waitForViewSize(channel2, 2);
+
+				channel1.send(new Message(null, "message from channel1"));
+				waitFor(() -> received.contains("message from channel1"), "message from channel1");
+			}
+		}
+	}
+
+	/**
+	 * Messages queued for a member are released when it leaves the view.
+	 */
+	@Test
+	public void testViewChangePurge() throws Exception {
+		final int port1 = FreePort.get(8447);
+		final int port2 = FreePort.get(8448);
+		final Map<String, String> rateLimit = new HashMap<>();
+		rateLimit.put("mklinger.HTTP.max_send_rate_per_dest", "1");
+
+		try (final JChannel channel1 = newEmbeddedServerChannel(port1, port2, rateLimit)) {
+			channel1.connect("purge");
+			waitForViewSize(channel1, 1);
+			final HTTP transport = (HTTP) channel1.getProtocolStack().getTransport();
+
+			try (final JChannel channel2 = newEmbeddedServerChannel(port2, port1)) {
+				channel2.connect("purge");
+				waitForViewSize(channel1, 2);
+				waitForViewSize(channel2, 2);
+
+				// Larger than rate_limit_priority_size, so all but the first are queued
+				for (int i = 0; i < 3; i++) {
+					channel1.send(new Message(channel2.getAddress(), new byte[4096]));
+				}
+				waitFor(() -> transport.getRateLimitQueueBytes() > 0, "queued messages");
+			}
+
+			waitForViewSize(channel1, 1);
+			Assert.assertEquals(0, transport.getRateLimitQueueBytes());
+			Assert.assertTrue(transport.getPurgedBytes() > 0);
+		}
+	}
+
+	private static JChannel newEmbeddedServerChannel(final int port, final int otherPort) throws Exception {
+		return newEmbeddedServerChannel(port, otherPort, Collections.emptyMap());
+	}
+
+	private static JChannel newEmbeddedServerChannel(final int port, final int otherPort, final Map<String, String> extraParameters) throws Exception {
+		final Map<String, String> protocolParameters = new HashMap<>(extraParameters);
+		protocolParameters.put("mklinger.HTTP.embedded_server", "true");
+		protocolParameters.put("mklinger.HTTP.bind_addr", "127.0.0.1");
+		protocolParameters.put("mklinger.HTTP.bind_port", String.valueOf(port));
+		protocolParameters.put("mklinger.HTTP.server_props",
+				"ssl.key-store=" + HttpClusterIT.class.getResource("server.p12").toExternalForm()
+				+ ",ssl.key-store-password=");
+		protocolParameters.put("mklinger.HTTP.client_props",
+				"ssl.trust-store=" + HttpClusterIT.class.getResource("ca-cert.p12").toExternalForm());
+		protocolParameters.put("mklinger.HTTPPING.initial_ping_addresses", "127.0.0.1:" + otherPort);
+		return new JChannel(new JGroupsServlet().getProtocolStackConfigurator("classpath:http.xml", protocolParameters));
+	}
+
+	/**
+	 * Requests to the {@link de.mklinger.jgroups.http.server.jetty.JGroupsSessionListener}
+	 * of an embedded server, answered like the servlet answers them.
+	 */
+	@Test
+	public void testSessionListener() throws Exception {
+		final List<String> received = Collections.synchronizedList(new ArrayList<>());
+		final HttpReceiver receiver = (sender, data, offset, length) -> received.add(new String(data, offset, length, StandardCharsets.UTF_8));
+
+		final Properties serverProperties = new Properties();
+		serverProperties.setProperty(ServerConstants.KEYSTORE_LOCATION, HttpClusterIT.class.getResource("server.p12").toExternalForm());
+		serverProperties.setProperty(ServerConstants.KEYSTORE_PASSWORD, "");
+		serverProperties.setProperty(ServerConstants.MAX_CONTENT_SIZE, "1k");
+
+		final Properties clientProperties = new Properties();
+		clientProperties.setProperty("ssl.trust-store", HttpClusterIT.class.getResource("ca-cert.p12").toExternalForm());
+
+		try (EmbeddedServer server = new EmbeddedServer(receiver, new InetSocketAddress("localhost", 0), "/jgroups", true, serverProperties);
+				HttpClient client = new DefaultClientFactory().newClient(clientProperties)) {
+			server.start();
+			final URI serviceUrl = URI.create("https://localhost:" + server.getLocalPort() + "/jgroups");
+
+			Assert.assertEquals(200, post(client, serviceUrl, "localhost:1234", "message"));
+			waitFor(() -> received.contains("message"), "message");
+
+			Assert.assertEquals(413, post(client, serviceUrl, "localhost:1234", new String(new char[100 * 1024])));
+			Assert.assertEquals(400, post(client, serviceUrl, null, "message without sender"));
+			Assert.assertEquals(404, post(client, URI.create("https://localhost:" + server.getLocalPort() + "/other"), "localhost:1234", "message"));
+			Assert.assertEquals(204, client.sendAsync(HttpRequest.newBuilder(serviceUrl).GET().build(), BodyHandlers.discard())
+					.get(10, TimeUnit.SECONDS).statusCode());
+
+			// The connection is still usable after the rejected request
+			Assert.assertEquals(200, post(client, serviceUrl, "localhost:1234", "message after reject"));
+			waitFor(() -> received.contains("message after reject"), "message after reject");
+			Assert.assertEquals(2, received.size());
+		}
+	}
+
+	private static int post(final HttpClient client, final URI serviceUrl, final String sender, final String message) throws Exception {
+		final HttpRequest.Builder builder = HttpRequest.newBuilder(serviceUrl)
+				.POST(BodyProviders.fromByteArray("application/x-jgroups-message", message.getBytes(StandardCharsets.UTF_8)));
+		if (sender != null) {
+			builder.header(SenderHeader.NAME, sender);
+		}
+		return client.sendAsync(builder.build(), BodyHandlers.discard()).get(10, TimeUnit.SECONDS).statusCode();
+	}
+
+	private static ServletHolder initServlet(final JettyHttpServerImpl server, final JettyHttpServerImpl otherServer) {
 		final ServletHolder servletHolder = server.getServletHandler().addServlet(JGroupsServlet.class, "/jgroups");
 		servletHolder.setInitOrder(1);
 		servletHolder.setInitParameter("protocol.mklinger.HTTP.external_addr", server.getHttpsBindAddress().getHostString());
@@ -85,6 +349,7 @@ public class HttpClusterIT {
 		final InetSocketAddress otherServerAddress = otherServer.getHttpsBindAddress();
 		servletHolder.setInitParameter("protocol.mklinger.HTTPPING.initial_ping_addresses",
 				otherServerAddress.getHostString() + ":" + otherServerAddress.getPort());
+		return servletHolder;
 	}
 
 	private static JChannel getChannel(final JettyHttpServerImpl server1) {
@@ -0,0 +1,163 @@
+package de.mklinger.jgroups.http;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jgroups.protocols.mklinger.InetAddresses;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InetAddressesTest {
+	private static final int ITERATIONS = 20000;
+
+	@Test
+	public void testValid() throws Exception {
+		final String[] valid = {
+				"0.0.0.0", "127.0.0.1", "255.255.255.255", "10.0.99.1",
+				"::", "::1", "1::", "2001:db8::1", "2001:DB8:0:0:0:0:0:1", "1:2:3:4:5:6:7:8",
+				"1:2:3:4:5:6:7::", "::2:3:4:5:6:7:8", "::ffff:1.2.3.4", "1:2:3:4:5:6:1.2.3.4",
+				"::1.2.3.4", "fe80::1:2"
+		};
+		for (final String s : valid) {
+			assertSameAsInetAddress(s, InetAddresses.ipStringToBytes(s));
+		}
+	}
+
+	@Test
+	public void testInvalid() throws Exception {
+		final String[] invalid = {
+				"", ".", ":", "1", "1.2.3", "1.2.3.4.5", "1.2.3.256", "01.2.3.4", "1..2.3", "1.2.3.4.",
+				".1.2.3.4", "1.2.3.a", "1234.1.1.1", "localhost", "a.b.c.d",
+				":::", "1:::2", "1::2::3", ":1", "1:", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "12345::",
+				"1::2:3:4:5:6:7:8", "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3.4:1", "::g", "1.2.3.4::",
+				"fe80::1%eth0", "\u0661.2.3.4", "::\uff11"
+		};
+		for (final String s : invalid) {
+			Assert.assertNull(s, InetAddresses.ipStringToBytes(s));
+			Assert.assertEquals(-1, InetAddresses.parseIp(s, 0, s.length(), new byte[16]));
+		}
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		final String s = "host/2001:db8::1:8443";
+		Assert.assertArrayEquals(InetAddress.getByName("2001:db8::1").getAddress(), InetAddresses.ipStringToBytes(s, 5, 16));
+		final byte[] dst = new byte[16];
+		Assert.assertEquals(4, InetAddresses.parseIp("x1.2.3.4y", 1, 8, dst));
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4 }, Arrays.copyOf(dst, 4));
+	}
+
+	@Test
+	public void testRandomIpv4() throws Exception {
+		final Random random = new Random(42);
+		for (int i = 0; i < ITERATIONS; i++) {
+			final byte[] bytes = new byte[4];
+			random.nextBytes(bytes);
+			final String s = (bytes[0] & 0xff) + "." + (bytes[1] & 0xff) + "." + (bytes[2] & 0xff) + "." + (bytes[3] & 0xff);
+			Assert.assertArrayEquals(s, bytes, InetAddresses.ipStringToBytes(s));
+		}
+	}
+
+	@Test
+	public void testRandomIpv6() throws Exception {
+		final Random random = new Random(42);
+		for (int i = 0; i < ITERATIONS; i++) {
+			final byte[] bytes = randomIpv6(random);
+			for (final String s : formats(InetAddress.getByAddress(bytes), bytes)) {
+				Assert.assertArrayEquals(s, bytes, InetAddresses.ipStringToBytes(s));
+				assertSameAsInetAddress(s, InetAddresses.ipStringToBytes(s));
+			}
+		}
+	}
+
+	/**
+	 * Mutate valid addresses randomly. Whenever the result is accepted, it
+	 * must be accepted by InetAddress with the same result. Only accepted
+	 * strings are given to InetAddress, as other strings could trigger DNS
+	 * lookups.
+	 */
+	@Test
+	public void testMutations() throws Exception {
+		final Random random = new Random(42);
+		final String alphabet = "0123456789abcdefABCDEFxyz:.%/ ";
+		for (int i = 0; i < ITERATIONS; i++) {
+			final byte[] bytes = random.nextBoolean() ? randomIpv6(random) : randomIpv4(random);
+			final String[] formats = formats(InetAddress.getByAddress(bytes), bytes);
+			final StringBuilder sb = new StringBuilder(formats[random.nextInt(formats.length)]);
+			final int mutations = 1 + random.nextInt(3);
+			for (int j = 0; j < mutations && sb.length() > 0; j++) {
+				final int idx = random.nextInt(sb.length());
+				final char c = alphabet.charAt(random.nextInt(alphabet.length()));
+				switch (random.nextInt(3)) {
+				case 0:
+					sb.deleteCharAt(idx);
+					break;
+				case 1:
+					sb.insert(idx, c);
+					break;
+				default:
+					sb.setCharAt(idx, c);
+				}
+			}
+			final String s = sb.toString();
+			final byte[] parsed = InetAddresses.ipStringToBytes(s);
+			if (parsed != null) {
+				assertSameAsInetAddress(s, parsed);
+			}
+		}
+	}
+
+	private static void assertSameAsInetAddress(final String s, final byte[] parsed) throws Exception {
+		Assert.assertNotNull(s, parsed);
+		final InetAddress expected = InetAddress.getByName(s);
+		if (expected instanceof Inet4Address && parsed.length == 16) {
+			// InetAddress converts IPv4-mapped IPv6 addresses to IPv4
+			Assert.assertArrayEquals(s, expected.getAddress(), Arrays.copyOfRange(parsed, 12, 16));
+		} else {
+			Assert.assertArrayEquals(s, expected.getAddress(), parsed);
+		}
+	}
+
+	private static byte[] randomIpv4(final Random random) {
+		final byte[] bytes = new byte[4];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] randomIpv6(final Random random) {
+		final byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		// Create runs of zeroes for "::" compression
+		final int zeroes = random.nextInt(16);
+		final int zeroesStart = random.nextInt(16 - zeroes + 1);
+		Arrays.fill(bytes, zeroesStart, zeroesStart + zeroes, (byte) 0);
+		return bytes;
+	}
+
+	private static String[] formats(final InetAddress address, final byte[] bytes) {
+		if (bytes.length == 4) {
+			return new String[] { InetAddresses.toAddrString(address) };
+		}
+		final StringBuilder full = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			if (i > 0) {
+				full.append(':');
+			}
+			full.append(Integer.toHexString(((bytes[2 * i] & 0xff) << 8) | (bytes[2 * i + 1] & 0xff)));
+		}
+		final String compressed = InetAddresses.toAddrString(address);
+		final int lastColon = full.lastIndexOf(":");
+		final int secondLastColon = full.lastIndexOf(":", lastColon - 1);
+		final String embeddedIpv4 = full.substring(0, secondLastColon + 1)
+				+ (bytes[12] & 0xff) + "." + (bytes[13] & 0xff) + "." + (bytes[14] & 0xff) + "." + (bytes[15] & 0xff);
+		return new String[] {
+				full.toString(),
+				full.toString().toUpperCase(Locale.ROOT),
+				compressed,
+				embeddedIpv4
+		};
+	}
+}
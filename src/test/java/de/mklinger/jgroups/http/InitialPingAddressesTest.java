@@ -0,0 +1,105 @@
+package de.mklinger.jgroups.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgroups.PhysicalAddress;
+import org.jgroups.protocols.mklinger.DnsCache;
+import org.jgroups.protocols.mklinger.HostAddress;
+import org.jgroups.protocols.mklinger.InitialPingAddresses;
+import org.jgroups.protocols.mklinger.InitialPingAddressesConverter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InitialPingAddressesTest {
+	private final Map<String, InetAddress> hosts = new HashMap<>();
+	private final AtomicLong clock = new AtomicLong();
+	private DnsCache previousDefault;
+
+	@Before
+	public void setUp() throws Exception {
+		previousDefault = DnsCache.getDefault();
+		final DnsCache cache = new DnsCache(host -> {
+			final InetAddress address = hosts.get(host);
+			if (address == null) {
+				throw new UnknownHostException(host);
+			}
+			return address;
+		}, Runnable::run, clock::get);
+		cache.setTtlMillis(1000);
+		cache.setNegativeTtlMillis(100);
+		DnsCache.setDefault(cache);
+	}
+
+	@After
+	public void tearDown() {
+		DnsCache.setDefault(previousDefault);
+	}
+
+	private void putHost(final String host, final int lastByte) throws UnknownHostException {
+		hosts.put(host, InetAddress.getByAddress(host, new byte[] { 10, 0, 0, (byte) lastByte }));
+	}
+
+	private void expire() {
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+	}
+
+	private static InitialPingAddresses convert(final String value) throws Exception {
+		return (InitialPingAddresses) new InitialPingAddressesConverter()
+				.convert(null, InitialPingAddresses.class, "initial_ping_addresses", value, false);
+	}
+
+	@Test
+	public void testFollowsDnsChange() throws Exception {
+		putHost("node1", 1);
+		InitialPingAddresses addresses = convert("node1:7800");
+		Assert.assertEquals(Arrays.asList(new HostAddress("10.0.0.1:7800")), addresses);
+
+		putHost("node1", 2);
+		expire();
+		// The first refresh only starts the lookup of the expired entry
+		addresses = addresses.refresh().refresh();
+		Assert.assertEquals(Arrays.asList(new HostAddress("10.0.0.2:7800")), addresses);
+
+		// Still followed after a change
+		putHost("node1", 3);
+		expire();
+		addresses = addresses.refresh().refresh();
+		Assert.assertEquals(Arrays.asList(new HostAddress("10.0.0.3:7800")), addresses);
+	}
+
+	@Test
+	public void testKeepsPinnedAddress() throws Exception {
+		putHost("node1", 1);
+		final InitialPingAddresses addresses = convert("node1/10.0.0.9:7800");
+		// Make the DNS cache know another address for the host name
+		DnsCache.getDefault().getIfPresent("node1");
+
+		Assert.assertSame(addresses, addresses.refresh());
+		Assert.assertEquals(Arrays.asList(new HostAddress("10.0.0.9:7800")), addresses);
+	}
+
+	@Test
+	public void testRetriesUnresolved() throws Exception {
+		putHost("node1", 1);
+		InitialPingAddresses addresses = convert("node1:7800,node2:7801");
+		Assert.assertEquals(Arrays.asList(new HostAddress("10.0.0.1:7800")), addresses);
+		Assert.assertEquals(Collections.singletonList("node2:7801"), addresses.getUnresolved());
+		Assert.assertSame(addresses, addresses.refresh());
+
+		putHost("node2", 2);
+		expire();
+		addresses = addresses.refresh();
+		Assert.assertEquals(Arrays.<PhysicalAddress>asList(new HostAddress("10.0.0.1:7800"), new HostAddress("10.0.0.2:7801")), addresses);
+		Assert.assertTrue(addresses.getUnresolved().isEmpty());
+		Assert.assertEquals("node1/10.0.0.1:7800,node2/10.0.0.2:7801", new InitialPingAddressesConverter().toString(addresses));
+	}
+}
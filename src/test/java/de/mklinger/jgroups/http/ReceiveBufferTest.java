@@ -0,0 +1,100 @@
+package de.mklinger.jgroups.http;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.server.ReceiveBuffer;
+
+public class ReceiveBufferTest {
+	private static byte[] randomBytes(final int length) {
+		final byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	@Test
+	public void testKnownLength() {
+		final byte[] data = randomBytes(1000);
+		final ReceiveBuffer buffer = new ReceiveBuffer(data.length, 1000);
+		buffer.append(data, 0, 400);
+		buffer.append(ByteBuffer.wrap(data, 400, 600));
+		Assert.assertEquals(1000, buffer.size());
+		Assert.assertArrayEquals(data, buffer.getBuffer());
+	}
+
+	@Test
+	public void testUnknownLength() {
+		final byte[] data = randomBytes(300 * 1024 + 17);
+		final ReceiveBuffer buffer = new ReceiveBuffer(-1, data.length);
+		for (int offset = 0; offset < data.length; offset += 5000) {
+			buffer.append(data, offset, Math.min(5000, data.length - offset));
+		}
+		Assert.assertEquals(data.length, buffer.size());
+		Assert.assertArrayEquals(data, buffer.getBuffer());
+	}
+
+	@Test
+	public void testReadFrom() throws Exception {
+		final byte[] data = randomBytes(200 * 1024);
+		final ByteArrayInputStream in = new ByteArrayInputStream(data);
+		final ReceiveBuffer buffer = new ReceiveBuffer(-1, data.length);
+		while (buffer.readFrom(in) != -1) {
+			// continue
+		}
+		Assert.assertArrayEquals(data, buffer.getBuffer());
+	}
+
+	@Test
+	public void testMoreThanAnnounced() {
+		final byte[] data = randomBytes(100);
+		final ReceiveBuffer buffer = new ReceiveBuffer(50, 1000);
+		buffer.append(data, 0, data.length);
+		Assert.assertArrayEquals(data, buffer.getBuffer());
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(0, new ReceiveBuffer(0, 1000).getBuffer().length);
+		Assert.assertEquals(0, new ReceiveBuffer(-1, 1000).getBuffer().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAnnouncedTooLarge() {
+		new ReceiveBuffer(1001, 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAppendTooLarge() {
+		final ReceiveBuffer buffer = new ReceiveBuffer(-1, 1000);
+		buffer.append(new byte[1001], 0, 1001);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadTooLarge() throws Exception {
+		final ByteArrayInputStream in = new ByteArrayInputStream(new byte[1001]);
+		final ReceiveBuffer buffer = new ReceiveBuffer(-1, 1000);
+		while (buffer.readFrom(in) != -1) {
+			// continue
+		}
+	}
+
+	@Test
+	public void testMaxContentLength() {
+		// Default, raised to the required size only if larger
+		Assert.assertEquals(500_000, ReceiveBuffer.getMaxContentLength(null, 0));
+		Assert.assertEquals(500_000, ReceiveBuffer.getMaxContentLength(null, 76_000));
+		Assert.assertEquals(8_016_000, ReceiveBuffer.getMaxContentLength(null, 8_016_000));
+		// Configured size is used as is
+		Assert.assertEquals(1_000, ReceiveBuffer.getMaxContentLength("1k", 76_000));
+		Assert.assertEquals(16_000_000, ReceiveBuffer.getMaxContentLength(" 16m ", 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxContentLengthTooLarge() {
+		ReceiveBuffer.getMaxContentLength("4g", 0);
+	}
+}
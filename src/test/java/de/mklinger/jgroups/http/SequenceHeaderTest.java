@@ -0,0 +1,31 @@
+package de.mklinger.jgroups.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.server.BadRequestException;
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+public class SequenceHeaderTest {
+	@Test
+	public void testRoundTrip() throws Exception {
+		final SequenceHeader header = SequenceHeader.parse(new SequenceHeader(-4711L, 42L).toString());
+		Assert.assertEquals(-4711L, header.getEpoch());
+		Assert.assertEquals(42L, header.getSeq());
+	}
+
+	@Test
+	public void testMissing() throws Exception {
+		Assert.assertNull(SequenceHeader.parse(null));
+	}
+
+	@Test(expected = BadRequestException.class)
+	public void testNoSeparator() throws Exception {
+		SequenceHeader.parse("42");
+	}
+
+	@Test(expected = BadRequestException.class)
+	public void testInvalidNumber() throws Exception {
+		SequenceHeader.parse("1:x");
+	}
+}
@@ -0,0 +1,134 @@
+package de.mklinger.jgroups.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.common.StripedExecutor;
+
+public class StripedExecutorTest {
+	@Test
+	public void testOrderPerKey() throws Exception {
+		final int keys = 10;
+		final int tasksPerKey = 1000;
+		final Map<Integer, List<Integer>> executed = new HashMap<>();
+		for (int key = 0; key < keys; key++) {
+			executed.put(key, Collections.synchronizedList(new ArrayList<>()));
+		}
+		final CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+		final StripedExecutor executor = new StripedExecutor("test", 4, 16);
+		try {
+			for (int i = 0; i < tasksPerKey; i++) {
+				for (int key = 0; key < keys; key++) {
+					final int k = key;
+					final int n = i;
+					executor.execute(k, () -> {
+						executed.get(k).add(n);
+						done.countDown();
+					});
+				}
+			}
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			executor.close();
+		}
+		for (int key = 0; key < keys; key++) {
+			final List<Integer> list = executed.get(key);
+			Assert.assertEquals(tasksPerKey, list.size());
+			for (int i = 0; i < tasksPerKey; i++) {
+				Assert.assertEquals(i, list.get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void testDifferentKeysInParallel() throws Exception {
+		final StripedExecutor executor = new StripedExecutor("test", 2, 16);
+		try {
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch other = new CountDownLatch(1);
+			// keys 0 and 1 map to different stripes
+			executor.execute(0, () -> {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			executor.execute(1, other::countDown);
+			Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+			release.countDown();
+		} finally {
+			executor.close();
+		}
+	}
+
+	@Test
+	public void testFailingTaskDoesNotStopStripe() throws Exception {
+		final StripedExecutor executor = new StripedExecutor("test", 1, 16);
+		try {
+			final CountDownLatch done = new CountDownLatch(1);
+			executor.execute("key", () -> {
+				throw new IllegalStateException("expected");
+			});
+			executor.execute("key", done::countDown);
+			Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		} finally {
+			executor.close();
+		}
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testRejectAfterClose() {
+		final StripedExecutor executor = new StripedExecutor("test", 1, 16);
+		executor.close();
+		executor.execute("key", () -> {});
+	}
+
+	@Test
+	public void testSaturated() throws Exception {
+		final StripedExecutor executor = new StripedExecutor("test", 2, 2);
+		try {
+			final CountDownLatch running = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			executor.execute("key", () -> {
+				running.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+			executor.execute("key", () -> {});
+			Assert.assertFalse(executor.isSaturated("key"));
+			executor.execute("key", () -> {});
+			Assert.assertTrue(executor.isSaturated("key"));
+			// Keys of other stripes are not affected
+			Assert.assertFalse(executor.isSaturated(otherStripeKey(executor, "key")));
+			release.countDown();
+		} finally {
+			executor.close();
+		}
+	}
+
+	private static String otherStripeKey(final StripedExecutor executor, final String key) {
+		for (int i = 0;; i++) {
+			final String other = key + i;
+			if (!executor.isSaturated(other)) {
+				return other;
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package de.mklinger.jgroups.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.common.TokenBucket;
+
+public class TokenBucketTest {
+	private final AtomicLong clock = new AtomicLong();
+
+	private void advanceMillis(final long millis) {
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	@Test
+	public void testUnlimited() {
+		final TokenBucket bucket = new TokenBucket(0, clock::get);
+		Assert.assertTrue(bucket.isUnlimited());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(bucket.tryTake(Long.MAX_VALUE / 2));
+		}
+		Assert.assertEquals(0, bucket.getWaitNanos());
+	}
+
+	@Test
+	public void testStartsFull() {
+		final TokenBucket bucket = new TokenBucket(10, clock::get);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(bucket.tryTake(1));
+		}
+		Assert.assertFalse(bucket.tryTake(1));
+	}
+
+	@Test
+	public void testRefill() {
+		final TokenBucket bucket = new TokenBucket(10, clock::get);
+		Assert.assertTrue(bucket.tryTake(10));
+		Assert.assertFalse(bucket.tryTake(1));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.getWaitNanos());
+		advanceMillis(100);
+		Assert.assertTrue(bucket.tryTake(1));
+		Assert.assertFalse(bucket.tryTake(1));
+	}
+
+	@Test
+	public void testCapacityIsOneSecond() {
+		final TokenBucket bucket = new TokenBucket(10, clock::get);
+		advanceMillis(10000);
+		Assert.assertTrue(bucket.tryTake(10));
+		Assert.assertFalse(bucket.tryTake(1));
+	}
+
+	@Test
+	public void testDebt() {
+		final TokenBucket bucket = new TokenBucket(1000, clock::get);
+		// larger than the rate, but the bucket is not empty
+		Assert.assertTrue(bucket.tryTake(3000));
+		Assert.assertFalse(bucket.tryTake(1));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(2001), bucket.getWaitNanos());
+		advanceMillis(2000);
+		Assert.assertFalse(bucket.tryTake(1));
+		advanceMillis(1);
+		Assert.assertTrue(bucket.tryTake(1));
+	}
+
+	@Test
+	public void testTakeWhenEmpty() {
+		final TokenBucket bucket = new TokenBucket(10, clock::get);
+		bucket.take(20);
+		Assert.assertFalse(bucket.tryTake(1));
+		advanceMillis(1000);
+		Assert.assertFalse(bucket.tryTake(1));
+		advanceMillis(100);
+		Assert.assertTrue(bucket.tryTake(1));
+	}
+
+	@Test
+	public void testSetRate() {
+		final TokenBucket bucket = new TokenBucket(0, clock::get);
+		bucket.setRate(5);
+		Assert.assertEquals(5, bucket.getRate());
+		Assert.assertTrue(bucket.tryTake(5));
+		Assert.assertFalse(bucket.tryTake(1));
+		bucket.setRate(0);
+		Assert.assertTrue(bucket.tryTake(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeRate() {
+		new TokenBucket(-1, clock::get);
+	}
+}
@@ -0,0 +1,88 @@
+package org.jgroups.protocols.mklinger;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jgroups.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+	private final CircuitBreaker breaker = new CircuitBreaker();
+
+	@Test
+	public void testOpensAfterThreshold() {
+		Assert.assertFalse(breaker.onFailure(3, 0));
+		Assert.assertFalse(breaker.onFailure(3, 0));
+		Assert.assertFalse(breaker.isOpen());
+		Assert.assertTrue(breaker.onFailure(3, 0));
+		Assert.assertTrue(breaker.isOpen());
+		// Already open, no further probe
+		Assert.assertFalse(breaker.onFailure(3, 0));
+	}
+
+	@Test
+	public void testSuccessResetsFailures() {
+		breaker.onFailure(3, 0);
+		breaker.onFailure(3, 0);
+		Assert.assertFalse(breaker.onSuccess());
+		Assert.assertFalse(breaker.onFailure(3, 0));
+		Assert.assertFalse(breaker.isOpen());
+	}
+
+	@Test
+	public void testProbe() {
+		Assert.assertFalse(breaker.startProbe());
+		breaker.onFailure(1, 0);
+		Assert.assertTrue(breaker.startProbe());
+		Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		Assert.assertTrue(breaker.isOpen());
+		// Only one probe at a time
+		Assert.assertFalse(breaker.startProbe());
+
+		// A failed probe opens the breaker again
+		Assert.assertTrue(breaker.onFailure(1, 0));
+		Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		Assert.assertTrue(breaker.startProbe());
+		Assert.assertTrue(breaker.onSuccess());
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testMillisOpen() {
+		final long second = TimeUnit.SECONDS.toNanos(1);
+		Assert.assertEquals(-1, breaker.getMillisOpen(0));
+		breaker.onFailure(1, second);
+		Assert.assertEquals(1000, breaker.getMillisOpen(2 * second));
+
+		// Failed probes keep the time the breaker opened first
+		breaker.startProbe();
+		breaker.onFailure(1, 3 * second);
+		Assert.assertEquals(3000, breaker.getMillisOpen(4 * second));
+
+		breaker.onSuccess();
+		Assert.assertEquals(-1, breaker.getMillisOpen(4 * second));
+	}
+
+	private static byte[] message(final boolean list, final Message.Flag... flags) {
+		short value = 0;
+		for (final Message.Flag flag : flags) {
+			value |= flag.value();
+		}
+		// Version (short), transport flags (byte), leading byte, message flags (short)
+		return new byte[] { 0, 0, (byte) (list ? 1 : 0), 0, (byte) (value >> 8), (byte) value, 0, 0 };
+	}
+
+	@Test
+	public void testOnlyInternalMessagesPassOpenBreaker() {
+		byte[] data = message(false, Message.Flag.INTERNAL, Message.Flag.OOB);
+		Assert.assertTrue(HTTP.isControlMessage(data, 0, data.length));
+		data = message(false, Message.Flag.OOB);
+		Assert.assertFalse(HTTP.isControlMessage(data, 0, data.length));
+		data = message(false);
+		Assert.assertFalse(HTTP.isControlMessage(data, 0, data.length));
+		// Bundled messages count as regular messages
+		data = message(true, Message.Flag.INTERNAL);
+		Assert.assertFalse(HTTP.isControlMessage(data, 0, data.length));
+	}
+}
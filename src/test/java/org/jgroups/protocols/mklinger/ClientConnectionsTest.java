@@ -0,0 +1,46 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClientConnectionsTest {
+	private final IpAddress dest = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final ClientConnections connections = new ClientConnections();
+
+	@Test
+	public void testFirstExchangeSetsUpConnection() {
+		Assert.assertFalse(connections.onExchange(dest, 0, 100));
+		Assert.assertTrue(connections.onExchange(dest, 100, 110));
+	}
+
+	@Test
+	public void testConcurrentFirstExchanges() {
+		// Started before the connection was known, may have waited for it
+		Assert.assertFalse(connections.onExchange(dest, 10, 100));
+		Assert.assertFalse(connections.onExchange(dest, 0, 120));
+		Assert.assertTrue(connections.onExchange(dest, 100, 130));
+	}
+
+	@Test
+	public void testConnectionError() {
+		connections.onExchange(dest, 0, 100);
+		connections.onConnectionError(dest);
+		Assert.assertEquals(0, connections.size());
+		Assert.assertFalse(connections.onExchange(dest, 200, 300));
+		Assert.assertTrue(connections.onExchange(dest, 300, 310));
+	}
+
+	@Test
+	public void testSharedByPeers() {
+		connections.onExchange(dest, 0, 100);
+		// A new peer, e.g. of another transport or after a view change, uses the existing connection
+		final Peer peer = new Peer(dest);
+		if (connections.onExchange(dest, 200, 210)) {
+			peer.addRtt(10);
+		}
+		Assert.assertEquals(10, peer.getSmoothedRttNanos());
+	}
+}
@@ -0,0 +1,46 @@
+package org.jgroups.protocols.mklinger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FD_HTTPTest {
+	private FD_HTTP fd;
+
+	@Before
+	public void setUp() throws Exception {
+		fd = new FD_HTTP();
+		fd.interval = 3000;
+		fd.timeout = 9000;
+		fd.open_breaker_timeout = 3000;
+		fd.init();
+	}
+
+	@Test
+	public void testSuspectsAfterTimeout() {
+		Assert.assertFalse(fd.isSuspect(8999, -1));
+		Assert.assertTrue(fd.isSuspect(9000, -1));
+	}
+
+	@Test
+	public void testOpenBreakerSpeedsUpSuspicion() {
+		Assert.assertTrue(fd.isSuspect(3000, 3000));
+		// Breaker not open long enough
+		Assert.assertFalse(fd.isSuspect(3000, 2999));
+		// Recent exchange, e.g. a heartbeat passed the breaker
+		Assert.assertFalse(fd.isSuspect(2999, 10000));
+	}
+
+	@Test
+	public void testOpenBreakerTimeoutDisabled() {
+		fd.open_breaker_timeout = 0;
+		Assert.assertFalse(fd.isSuspect(3000, 10000));
+		Assert.assertTrue(fd.isSuspect(9000, 10000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidInterval() throws Exception {
+		fd.timeout = fd.interval;
+		fd.init();
+	}
+}
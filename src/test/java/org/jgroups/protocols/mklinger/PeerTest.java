@@ -0,0 +1,75 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeerTest {
+	private final Peer peer = new Peer(new IpAddress(InetAddress.getLoopbackAddress(), 7800));
+
+	@Test
+	public void testRttUnknown() {
+		Assert.assertEquals(-1, peer.getSmoothedRttNanos());
+		Assert.assertEquals(-1, peer.getRetransmissionTimeoutNanos());
+	}
+
+	@Test
+	public void testFirstRtt() {
+		peer.addRtt(1000);
+		Assert.assertEquals(1000, peer.getSmoothedRttNanos());
+		Assert.assertEquals(500, peer.getRttVariationNanos());
+		Assert.assertEquals(3000, peer.getRetransmissionTimeoutNanos());
+	}
+
+	@Test
+	public void testSmoothedRtt() {
+		peer.addRtt(1000);
+		peer.addRtt(2000);
+		// RFC 6298: variation = 3/4 * 500 + 1/4 * |1000 - 2000|, smoothed = 7/8 * 1000 + 1/8 * 2000
+		Assert.assertEquals(625, peer.getRttVariationNanos());
+		Assert.assertEquals(1125, peer.getSmoothedRttNanos());
+		Assert.assertEquals(1125 + 4 * 625, peer.getRetransmissionTimeoutNanos());
+	}
+
+	@Test
+	public void testStableRttNarrowsDeadline() {
+		for (int i = 0; i < 50; i++) {
+			peer.addRtt(1000);
+		}
+		Assert.assertEquals(1000, peer.getSmoothedRttNanos());
+		Assert.assertTrue(peer.getRetransmissionTimeoutNanos() < 1100);
+	}
+
+	@Test
+	public void testPause() {
+		Assert.assertEquals(0, peer.getRemainingPauseMillis());
+		peer.pause(60000);
+		final long remaining = peer.getRemainingPauseMillis();
+		Assert.assertTrue(remaining > 0 && remaining <= 60000);
+		peer.pause(0);
+		Assert.assertEquals(0, peer.getRemainingPauseMillis());
+	}
+
+	@Test
+	public void testCancelInFlight() {
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+		final CompletableFuture<Void> pending = new CompletableFuture<>();
+		done.complete(null);
+		peer.addInFlight(done);
+		peer.addInFlight(pending);
+		final LongAdder cancelled = new LongAdder();
+		peer.cancelInFlight(cancelled);
+		Assert.assertEquals(1, cancelled.sum());
+		Assert.assertTrue(pending.isCancelled());
+	}
+
+	@Test
+	public void testSendSeq() {
+		Assert.assertEquals(0, peer.nextSendSeq());
+		Assert.assertEquals(1, peer.nextSendSeq());
+	}
+}
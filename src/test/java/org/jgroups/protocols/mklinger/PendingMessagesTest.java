@@ -0,0 +1,71 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.jgroups.Address;
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PendingMessagesTest {
+	private final Address dest1 = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final Address dest2 = new IpAddress(InetAddress.getLoopbackAddress(), 7801);
+	private final PendingMessages pendingMessages = new PendingMessages();
+
+	@Test
+	public void testFlushInOrder() {
+		// Only the first message starts resolving the destination
+		Assert.assertTrue(pendingMessages.add(dest1, new byte[] { 1 }, 10));
+		Assert.assertFalse(pendingMessages.add(dest1, new byte[] { 2 }, 10));
+		Assert.assertEquals(1, pendingMessages.getDestinationCount());
+		Assert.assertEquals(2, pendingMessages.getMessageCount());
+
+		final List<byte[]> messages = pendingMessages.flush(dest1);
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals(1, messages.get(0)[0]);
+		Assert.assertEquals(2, messages.get(1)[0]);
+		Assert.assertEquals(0, pendingMessages.getDestinationCount());
+		Assert.assertEquals(2, pendingMessages.getQueued());
+		Assert.assertEquals(2, pendingMessages.getFlushed());
+
+		// Resolving starts again for messages after the flush
+		Assert.assertTrue(pendingMessages.flush(dest1).isEmpty());
+		Assert.assertTrue(pendingMessages.add(dest1, new byte[] { 3 }, 10));
+	}
+
+	@Test
+	public void testLimit() {
+		Assert.assertTrue(pendingMessages.add(dest1, new byte[1], 2));
+		Assert.assertFalse(pendingMessages.add(dest1, new byte[1], 2));
+		Assert.assertFalse(pendingMessages.add(dest1, new byte[1], 2));
+		Assert.assertEquals(2, pendingMessages.getMessageCount());
+		Assert.assertEquals(1, pendingMessages.getDropped());
+		// Other destinations are not affected
+		Assert.assertTrue(pendingMessages.add(dest2, new byte[1], 2));
+		Assert.assertEquals(3, pendingMessages.getMessageCount());
+	}
+
+	@Test
+	public void testDropAndPurge() {
+		pendingMessages.add(dest1, new byte[10], 10);
+		pendingMessages.add(dest1, new byte[20], 10);
+		pendingMessages.add(dest2, new byte[30], 10);
+		Assert.assertEquals(2, pendingMessages.drop(dest1));
+		Assert.assertEquals(30, pendingMessages.purge(dest2));
+		Assert.assertEquals(0, pendingMessages.purge(dest2));
+		Assert.assertEquals(3, pendingMessages.getDropped());
+		Assert.assertEquals(0, pendingMessages.getFlushed());
+		Assert.assertEquals(0, pendingMessages.getMessageCount());
+	}
+
+	@Test
+	public void testClear() {
+		pendingMessages.add(dest1, new byte[1], 10);
+		pendingMessages.add(dest2, new byte[1], 10);
+		pendingMessages.clear();
+		Assert.assertEquals(0, pendingMessages.getDestinationCount());
+		Assert.assertEquals(2, pendingMessages.getDropped());
+		Assert.assertEquals("", pendingMessages.toString());
+	}
+}
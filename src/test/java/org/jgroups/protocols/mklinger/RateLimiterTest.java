@@ -0,0 +1,147 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimiterTest {
+	private static final int PRIORITY_SIZE = 100;
+
+	private final IpAddress dest = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final AtomicLong clock = new AtomicLong();
+	private final List<Runnable> scheduled = new ArrayList<>();
+	private final List<Integer> sent = new ArrayList<>();
+	private final List<Boolean> sentDelayed = new ArrayList<>();
+	private RateLimiter rateLimiter;
+
+	@Before
+	public void setUp() {
+		rateLimiter = new RateLimiter((dest, data, attempt, sequence, delayed) -> {
+			sent.add(data.length);
+			sentDelayed.add(delayed);
+		}, (task, delayNanos) -> scheduled.add(task), clock::get);
+		// 1000 bytes per second to a single destination
+		rateLimiter.setRates(0, 0, 1000, 0);
+	}
+
+	private void advanceMillis(final long millis) {
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	private void runScheduled() {
+		final List<Runnable> tasks = new ArrayList<>(scheduled);
+		scheduled.clear();
+		tasks.forEach(Runnable::run);
+	}
+
+	private void submit(final int size) {
+		rateLimiter.submit(dest, new byte[size], 0, null, PRIORITY_SIZE, 10000);
+	}
+
+	@Test
+	public void testDisabledWithoutRates() {
+		rateLimiter.setRates(0, 0, 0, 0);
+		Assert.assertFalse(rateLimiter.isEnabled());
+	}
+
+	@Test
+	public void testSendsWithinLimit() {
+		Assert.assertTrue(rateLimiter.isEnabled());
+		submit(600);
+		Assert.assertEquals(1, sent.size());
+		Assert.assertFalse(sentDelayed.get(0));
+		Assert.assertTrue(scheduled.isEmpty());
+		Assert.assertEquals(0, rateLimiter.getQueuedBytes());
+	}
+
+	@Test
+	public void testOrdering() {
+		submit(600);
+		submit(601);
+		// bucket empty now
+		submit(602);
+		submit(200);
+		Assert.assertEquals(2, sent.size());
+		Assert.assertEquals(802, rateLimiter.getQueuedBytes());
+		Assert.assertEquals(2, rateLimiter.getDelayed());
+
+		advanceMillis(1000);
+		runScheduled();
+		Assert.assertEquals(4, sent.size());
+		Assert.assertEquals(Integer.valueOf(600), sent.get(0));
+		Assert.assertEquals(Integer.valueOf(601), sent.get(1));
+		Assert.assertEquals(Integer.valueOf(602), sent.get(2));
+		Assert.assertEquals(Integer.valueOf(200), sent.get(3));
+		Assert.assertTrue(sentDelayed.get(2));
+		Assert.assertTrue(sentDelayed.get(3));
+		Assert.assertEquals(0, rateLimiter.getQueuedBytes());
+	}
+
+	@Test
+	public void testPriorityBypass() {
+		submit(1500);
+		submit(500);
+		Assert.assertEquals(1, sent.size());
+		// small messages pass the queued message and the empty bucket
+		submit(PRIORITY_SIZE);
+		Assert.assertEquals(2, sent.size());
+		Assert.assertEquals(Integer.valueOf(PRIORITY_SIZE), sent.get(1));
+		Assert.assertFalse(sentDelayed.get(1));
+		Assert.assertEquals(500, rateLimiter.getQueuedBytes());
+	}
+
+	@Test
+	public void testQueueCap() {
+		submit(1500);
+		rateLimiter.submit(dest, new byte[600], 0, null, PRIORITY_SIZE, 1000);
+		rateLimiter.submit(dest, new byte[600], 0, null, PRIORITY_SIZE, 1000);
+		Assert.assertEquals(1, sent.size());
+		Assert.assertEquals(600, rateLimiter.getQueuedBytes());
+		Assert.assertEquals(1, rateLimiter.getDropped());
+	}
+
+	@Test
+	public void testDrainReschedulesUntilLimitAllows() {
+		submit(1500);
+		submit(500);
+		Assert.assertEquals(1, scheduled.size());
+
+		// 100 more bytes allowed, bucket still empty
+		advanceMillis(100);
+		runScheduled();
+		Assert.assertEquals(1, sent.size());
+		Assert.assertEquals(1, scheduled.size());
+
+		advanceMillis(1000);
+		runScheduled();
+		Assert.assertEquals(2, sent.size());
+		Assert.assertTrue(scheduled.isEmpty());
+	}
+
+	@Test
+	public void testDrainOnceScheduled() {
+		submit(1500);
+		submit(500);
+		submit(500);
+		Assert.assertEquals(1, scheduled.size());
+	}
+
+	@Test
+	public void testPurge() {
+		submit(1500);
+		submit(500);
+		Assert.assertEquals(500, rateLimiter.purge(dest));
+		Assert.assertEquals(0, rateLimiter.getQueuedBytes());
+
+		advanceMillis(1000);
+		runScheduled();
+		Assert.assertEquals(1, sent.size());
+	}
+}
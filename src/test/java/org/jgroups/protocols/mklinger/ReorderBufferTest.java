@@ -0,0 +1,216 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgroups.Address;
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+public class ReorderBufferTest {
+	private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final int MAX_BUFFERED = 3;
+
+	private final Address sender = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final List<Runnable> scheduled = new ArrayList<>();
+	private final List<Integer> received = new ArrayList<>();
+	private ReorderBuffer.Receiver receiver;
+	private ReorderBuffer reorderBuffer;
+
+	@Before
+	public void setUp() {
+		receiver = (sender, data, offset, length) -> received.add((int) data[offset]);
+		reorderBuffer = new ReorderBuffer((sender, data, offset, length) -> receiver.receive(sender, data, offset, length),
+				(task, delayNanos) -> {
+					Assert.assertEquals(TIMEOUT_NANOS, delayNanos);
+					scheduled.add(task);
+				});
+	}
+
+	private void receive(final long epoch, final int seq) {
+		reorderBuffer.receive(sender, new SequenceHeader(epoch, seq), new byte[] { 0, (byte) seq }, 1, 1, TIMEOUT_NANOS, MAX_BUFFERED);
+	}
+
+	private void runScheduled() {
+		final List<Runnable> tasks = new ArrayList<>(scheduled);
+		scheduled.clear();
+		tasks.forEach(Runnable::run);
+	}
+
+	@Test
+	public void testInOrder() {
+		receive(1, 0);
+		receive(1, 1);
+		receive(1, 2);
+		Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+		Assert.assertEquals(0, reorderBuffer.getHeld());
+		Assert.assertTrue(scheduled.isEmpty());
+	}
+
+	@Test
+	public void testStartsWithFirstMessageSeen() {
+		receive(1, 5);
+		receive(1, 6);
+		Assert.assertEquals(Arrays.asList(5, 6), received);
+	}
+
+	@Test
+	public void testReorders() {
+		receive(1, 0);
+		receive(1, 2);
+		receive(1, 3);
+		Assert.assertEquals(Arrays.asList(0), received);
+		Assert.assertEquals(2, reorderBuffer.getBuffered());
+		Assert.assertEquals(2, reorderBuffer.getHeld());
+
+		receive(1, 1);
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3), received);
+		Assert.assertEquals(0, reorderBuffer.getBuffered());
+		Assert.assertEquals(0, reorderBuffer.getGapsSkipped());
+	}
+
+	@Test
+	public void testEpochChange() {
+		receive(1, 0);
+		receive(1, 2);
+		Assert.assertEquals(Arrays.asList(0), received);
+
+		// The sender restarted, numbering starts with 0 again
+		receive(2, 1);
+		Assert.assertEquals(Arrays.asList(0, 2), received);
+		Assert.assertEquals(1, reorderBuffer.getBuffered());
+
+		receive(2, 0);
+		Assert.assertEquals(Arrays.asList(0, 2, 0, 1), received);
+		Assert.assertEquals(0, reorderBuffer.getBuffered());
+	}
+
+	@Test
+	public void testLateMessage() {
+		receive(1, 0);
+		receive(1, 2);
+		runScheduled();
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 2), received);
+
+		receive(1, 1);
+		Assert.assertEquals(Arrays.asList(0, 2, 1), received);
+		Assert.assertEquals(1, reorderBuffer.getLate());
+		Assert.assertEquals(0, reorderBuffer.getBuffered());
+	}
+
+	@Test
+	public void testTimeout() {
+		receive(1, 0);
+		receive(1, 2);
+		receive(1, 4);
+		Assert.assertEquals(1, scheduled.size());
+
+		runScheduled();
+		// Skipped to 2, still waiting for 3
+		Assert.assertEquals(Arrays.asList(0, 2), received);
+		Assert.assertEquals(1, reorderBuffer.getGapsSkipped());
+		Assert.assertEquals(1, scheduled.size());
+
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 2, 4), received);
+		Assert.assertEquals(2, reorderBuffer.getGapsSkipped());
+		Assert.assertTrue(scheduled.isEmpty());
+	}
+
+	@Test
+	public void testNoSkipAfterProgress() {
+		receive(1, 0);
+		receive(1, 2);
+		receive(1, 4);
+		receive(1, 1);
+		Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+
+		// Progress was made while waiting, so wait once more for 3
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+		Assert.assertEquals(0, reorderBuffer.getGapsSkipped());
+		Assert.assertEquals(1, scheduled.size());
+
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 4), received);
+		Assert.assertEquals(1, reorderBuffer.getGapsSkipped());
+	}
+
+	@Test
+	public void testOverflow() {
+		receive(1, 0);
+		receive(1, 2);
+		receive(1, 3);
+		receive(1, 5);
+		Assert.assertEquals(Arrays.asList(0), received);
+
+		receive(1, 6);
+		Assert.assertEquals(Arrays.asList(0, 2, 3), received);
+		Assert.assertEquals(1, reorderBuffer.getGapsSkipped());
+		Assert.assertEquals(2, reorderBuffer.getBuffered());
+	}
+
+	@Test
+	public void testRemove() {
+		receive(1, 0);
+		receive(1, 2);
+		receive(1, 3);
+		reorderBuffer.remove(sender);
+		Assert.assertEquals(Arrays.asList(0, 2, 3), received);
+		Assert.assertEquals(0, reorderBuffer.getBuffered());
+
+		// A stale timeout does nothing
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 2, 3), received);
+		Assert.assertTrue(scheduled.isEmpty());
+	}
+
+	@Test
+	public void testDeliversOutsideLock() throws InterruptedException {
+		receive(1, 0);
+		receive(1, 2);
+		final AtomicBoolean blocked = new AtomicBoolean(true);
+		receiver = (sender, data, offset, length) -> {
+			received.add((int) data[offset]);
+			// Would block on the lock of the sender if held while delivering
+			final Thread thread = new Thread(() -> {
+				reorderBuffer.getBuffered();
+				blocked.set(false);
+			});
+			thread.start();
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		runScheduled();
+		Assert.assertEquals(Arrays.asList(0, 2), received);
+		Assert.assertFalse(blocked.get());
+	}
+
+	@Test
+	public void testReentrantReceiveKeepsOrder() {
+		receive(1, 0);
+		receive(1, 2);
+		receiver = (sender, data, offset, length) -> {
+			received.add((int) data[offset]);
+			if (data[offset] == 1) {
+				// Received while delivering, passed on after the current message
+				receive(1, 3);
+				Assert.assertEquals(Arrays.asList(0, 1), received);
+			}
+		};
+		receive(1, 1);
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3), received);
+	}
+}
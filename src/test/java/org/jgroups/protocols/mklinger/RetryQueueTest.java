@@ -0,0 +1,111 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mklinger.jgroups.http.server.SequenceHeader;
+
+public class RetryQueueTest {
+	private final PhysicalAddress dest1 = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final PhysicalAddress dest2 = new IpAddress(InetAddress.getLoopbackAddress(), 7801);
+	private final RetryQueue retryQueue = new RetryQueue();
+
+	@Test
+	public void testFlushInOrder() {
+		final SequenceHeader sequence = new SequenceHeader(1, 5);
+		Assert.assertTrue(retryQueue.add(dest1, new byte[] { 1 }, 1, sequence, 100, 1000));
+		// Queue exists, retry already scheduled
+		Assert.assertFalse(retryQueue.add(dest1, new byte[] { 2 }, 2, null, 100, 1000));
+		Assert.assertEquals(2, retryQueue.getBytes());
+
+		final List<RetryQueue.Retry> retries = retryQueue.flush(dest1);
+		Assert.assertEquals(2, retries.size());
+		Assert.assertEquals(1, retries.get(0).getData()[0]);
+		Assert.assertEquals(1, retries.get(0).getAttempt());
+		Assert.assertSame(sequence, retries.get(0).getSequence());
+		Assert.assertEquals(2, retries.get(1).getData()[0]);
+		Assert.assertEquals(2, retries.get(1).getAttempt());
+		Assert.assertNull(retries.get(1).getSequence());
+		Assert.assertEquals(0, retryQueue.getBytes());
+		Assert.assertEquals(2, retryQueue.getQueued());
+		Assert.assertEquals(2, retryQueue.getRetried());
+
+		// Queue removed by the flush
+		Assert.assertTrue(retryQueue.flush(dest1).isEmpty());
+		Assert.assertTrue(retryQueue.add(dest1, new byte[] { 3 }, 1, null, 100, 1000));
+	}
+
+	@Test
+	public void testLimitPerDestination() {
+		Assert.assertTrue(retryQueue.add(dest1, new byte[60], 1, null, 100, 1000));
+		Assert.assertFalse(retryQueue.add(dest1, new byte[60], 1, null, 100, 1000));
+		Assert.assertEquals(1, retryQueue.getDropped());
+		Assert.assertEquals(60, retryQueue.getBytes());
+		// Other destinations are not affected
+		Assert.assertTrue(retryQueue.add(dest2, new byte[60], 1, null, 100, 1000));
+		Assert.assertEquals(120, retryQueue.getBytes());
+	}
+
+	@Test
+	public void testFirstMessageLargerThanLimitPerDestination() {
+		Assert.assertTrue(retryQueue.add(dest1, new byte[200], 1, null, 100, 1000));
+		Assert.assertEquals(200, retryQueue.getBytes());
+		Assert.assertEquals(0, retryQueue.getDropped());
+		Assert.assertFalse(retryQueue.add(dest1, new byte[1], 1, null, 100, 1000));
+		Assert.assertEquals(1, retryQueue.getDropped());
+	}
+
+	@Test
+	public void testTotalLimit() {
+		Assert.assertTrue(retryQueue.add(dest1, new byte[600], 1, null, 1000, 1000));
+		// Dropped, no queue left to schedule
+		Assert.assertFalse(retryQueue.add(dest2, new byte[600], 1, null, 1000, 1000));
+		Assert.assertEquals(1, retryQueue.getDropped());
+		Assert.assertEquals(600, retryQueue.getBytes());
+		Assert.assertTrue(retryQueue.flush(dest2).isEmpty());
+
+		retryQueue.flush(dest1);
+		Assert.assertTrue(retryQueue.add(dest2, new byte[600], 1, null, 1000, 1000));
+	}
+
+	@Test
+	public void testDropAndPurge() {
+		retryQueue.add(dest1, new byte[10], 1, null, 100, 1000);
+		retryQueue.add(dest1, new byte[20], 1, null, 100, 1000);
+		retryQueue.add(dest2, new byte[30], 1, null, 100, 1000);
+		Assert.assertEquals(2, retryQueue.drop(dest1));
+		Assert.assertEquals(30, retryQueue.purge(dest2));
+		Assert.assertEquals(0, retryQueue.purge(dest2));
+		Assert.assertEquals(3, retryQueue.getDropped());
+		Assert.assertEquals(0, retryQueue.getBytes());
+		Assert.assertEquals(0, retryQueue.getRetried());
+	}
+
+	@Test
+	public void testClear() {
+		retryQueue.add(dest1, new byte[10], 1, null, 100, 1000);
+		retryQueue.add(dest2, new byte[10], 1, null, 100, 1000);
+		retryQueue.clear();
+		Assert.assertEquals(0, retryQueue.getBytes());
+		Assert.assertEquals(2, retryQueue.getDropped());
+		Assert.assertEquals("", retryQueue.toString());
+	}
+
+	@Test
+	public void testBackoff() {
+		for (int i = 0; i < 100; i++) {
+			final long first = RetryQueue.backoffMillis(1, 100, 5000);
+			Assert.assertTrue(first >= 50 && first <= 100);
+			final long third = RetryQueue.backoffMillis(3, 100, 5000);
+			Assert.assertTrue(third >= 200 && third <= 400);
+			// Capped at the max, also for large attempt counts
+			final long capped = RetryQueue.backoffMillis(100, 100, 5000);
+			Assert.assertTrue(capped >= 2500 && capped <= 5000);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.jgroups.protocols.mklinger;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.Protocol;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XMIT_FILTERTest {
+	private final IpAddress member1 = new IpAddress(InetAddress.getLoopbackAddress(), 7800);
+	private final IpAddress member2 = new IpAddress(InetAddress.getLoopbackAddress(), 7801);
+	private final List<Message> sent = new ArrayList<>();
+	private final List<Event> passedUp = new ArrayList<>();
+	private XMIT_FILTER filter;
+
+	@Before
+	public void setUp() {
+		filter = new XMIT_FILTER();
+		filter.setDownProtocol(new Protocol() {
+			@Override
+			public Object down(final Message msg) {
+				sent.add(msg);
+				return null;
+			}
+
+			@Override
+			public Object down(final Event evt) {
+				return null;
+			}
+		});
+		filter.setUpProtocol(new Protocol() {
+			@Override
+			public Object up(final Event evt) {
+				passedUp.add(evt);
+				return null;
+			}
+		});
+	}
+
+	private void confirm(final Message msg) {
+		filter.up(new Event(HTTP.DELIVERY_CONFIRMED, new DeliveryConfirmation(msg.getDest(), (IpAddress) msg.getDest(), msg, 100, 1000)));
+	}
+
+	/**
+	 * Sends a message and retransmits it twice, like UNICAST3 does while the
+	 * ack is outstanding.
+	 * @return The number of requests the transport sent for the message
+	 */
+	private int sendWithRetransmissions(final Message msg, final boolean confirmed) {
+		final int before = sent.size();
+		filter.down(msg);
+		if (confirmed) {
+			confirm(msg);
+		}
+		filter.down(msg);
+		filter.down(msg);
+		return sent.size() - before;
+	}
+
+	@Test
+	public void testFewerRetransmissionsOfConfirmedMessages() {
+		Assert.assertEquals(3, sendWithRetransmissions(new Message(member1), false));
+		// The first retransmission is dropped, later ones pass
+		Assert.assertEquals(2, sendWithRetransmissions(new Message(member1), true));
+		Assert.assertEquals(1, filter.getConfirmations());
+		Assert.assertEquals(1, filter.getDroppedRetransmissions());
+		// Consumed, not passed up
+		Assert.assertTrue(passedUp.isEmpty());
+	}
+
+	@Test
+	public void testOnlyLastConfirmedMessagePerMember() {
+		final Message first = new Message(member1);
+		final Message second = new Message(member1);
+		final Message other = new Message(member2);
+		filter.down(first);
+		filter.down(second);
+		filter.down(other);
+		confirm(first);
+		confirm(second);
+		confirm(other);
+		sent.clear();
+
+		filter.down(first);
+		filter.down(second);
+		filter.down(other);
+		Assert.assertEquals(Collections.singletonList(first), sent);
+		Assert.assertEquals(2, filter.getDroppedRetransmissions());
+	}
+
+	@Test
+	public void testIgnoresConfirmationsWithoutMessage() {
+		final Message msg = new Message(member1);
+		filter.down(msg);
+		filter.up(new Event(HTTP.DELIVERY_CONFIRMED, new DeliveryConfirmation(member1, member1, null, 100, 1000)));
+		filter.down(msg);
+		Assert.assertEquals(2, sent.size());
+		Assert.assertEquals(0, filter.getConfirmations());
+	}
+
+	@Test
+	public void testForgetsLeftMembers() {
+		final Message msg = new Message(member1);
+		filter.down(msg);
+		confirm(msg);
+		filter.down(new Event(Event.VIEW_CHANGE, new View(member2, 2, Arrays.<Address>asList(member2))));
+		filter.down(msg);
+		Assert.assertEquals(2, sent.size());
+	}
+}